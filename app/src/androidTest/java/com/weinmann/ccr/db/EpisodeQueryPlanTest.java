@@ -0,0 +1,167 @@
+package com.weinmann.ccr.db;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Checks EXPLAIN QUERY PLAN for each EpisodeMetadataDao query against the schema Room
+ * creates. The SQL mirrors the @Query strings and reuses their shared constants, so a new
+ * query or a changed criteria needs a matching case here.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EpisodeQueryPlanTest {
+    private static final String TABLE = "episode_metadata";
+    // "SEARCH episode_metadata USING ..." on current SQLite, "SEARCH TABLE episode_metadata ..." on older
+    private static final Pattern PLAN_ROW = Pattern.compile("^(SCAN|SEARCH) (?:TABLE )?(\\w+)(.*)$");
+
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        db = Room.inMemoryDatabaseBuilder(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                        AppDatabase.class)
+                .addCallback(Triggers.CALLBACK)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void getByUrlSearchesUrlIndex() {
+        assertSearches("SELECT * FROM episode_metadata WHERE enclosureUrl = :enclosureUrl",
+                "index_episode_metadata_enclosureUrl");
+    }
+
+    @Test
+    public void getActiveSearchesAndSortsOffIndex() {
+        String[] queries = {
+                "SELECT * FROM episode_metadata WHERE isActive = 1 ORDER BY audioAbsolutePath ASC",
+                "SELECT " + EpisodeMetadataDao.SUMMARY_COLUMNS + " FROM episode_metadata " +
+                        "WHERE isActive = 1 ORDER BY audioAbsolutePath ASC",
+        };
+        for (String sql : queries) {
+            assertSearches(sql, "index_episode_metadata_isActive_audioAbsolutePath");
+            assertNoTempSort(sql);
+        }
+    }
+
+    @Test
+    public void getToDownloadSearchesIndex() {
+        assertSearches("SELECT * FROM episode_metadata WHERE " + EpisodeMetadataDao.TO_DOWNLOAD_CRITERIA,
+                "index_episode_metadata_isActive_contentLength");
+    }
+
+    @Test
+    public void getCompactableHistorySearchesIndex() {
+        assertSearches("SELECT * FROM episode_metadata " +
+                "WHERE isActive = 0 AND useForHistory = 1 AND pubDateMillis < :cutoffMillis", null);
+    }
+
+    @Test
+    public void deleteCriteriaSearchIndex() {
+        assertSearches("SELECT audioAbsolutePath FROM episode_metadata WHERE " +
+                EpisodeMetadataDao.DELETE_CRITERIA, null);
+        assertSearches("UPDATE episode_metadata SET isActive = 0, currentPos = 0, useForHistory = 1 WHERE " +
+                EpisodeMetadataDao.DELETE_CRITERIA, null);
+    }
+
+    @Test
+    public void lookupsByIdSearchPrimaryKey() {
+        assertSearches("DELETE FROM episode_metadata WHERE id IN (?, ?, ?)", "PRIMARY KEY");
+        assertSearches("UPDATE episode_metadata SET isListenedTo = 1, currentPos = :currentPos WHERE id = :id",
+                "PRIMARY KEY");
+    }
+
+    @Test
+    public void searchLooksUpMatchesByPrimaryKey() {
+        assertSearches("SELECT " + EpisodeMetadataDao.SUMMARY_COLUMNS + " FROM episode_metadata " +
+                "WHERE id IN (SELECT docid FROM episode_fts WHERE episode_fts MATCH :ftsQuery) " +
+                "ORDER BY (id IN (SELECT docid FROM episode_fts WHERE title MATCH :ftsQuery)) DESC, " +
+                "pubDateMillis DESC " +
+                "LIMIT :limit", "PRIMARY KEY");
+    }
+
+    /* Unfiltered listings read every row by design, but in index order rather than sorting a table scan */
+    @Test
+    public void fullListingsWalkAnIndex() {
+        String history = "SELECT " + EpisodeMetadataDao.SUMMARY_COLUMNS + " FROM episode_metadata " +
+                "ORDER BY pubDateMillis DESC";
+        assertWalksIndex(history, "index_episode_metadata_pubDateMillis");
+        assertNoTempSort(history);
+
+        assertWalksIndex("SELECT urlHash FROM episode_metadata", "index_episode_metadata_urlHash");
+    }
+
+    /* Every step touching episode_metadata is an index or primary key SEARCH, through index if given */
+    private void assertSearches(@NonNull String sql, String index) {
+        List<Matcher> rows = episodeRows(sql);
+        assertFalse("No plan rows for " + TABLE + ": " + sql, rows.isEmpty());
+        for (Matcher row : rows) {
+            String detail = row.group(0);
+            assertTrue("Full scan in " + detail + " for " + sql, "SEARCH".equals(row.group(1)));
+            assertTrue("No index in " + detail + " for " + sql, row.group(3).contains(" USING "));
+            if (index != null) {
+                assertTrue("Expected " + index + " in " + detail + " for " + sql, detail.contains(index));
+            }
+        }
+    }
+
+    private void assertWalksIndex(@NonNull String sql, @NonNull String index) {
+        List<Matcher> rows = episodeRows(sql);
+        assertFalse("No plan rows for " + TABLE + ": " + sql, rows.isEmpty());
+        for (Matcher row : rows) {
+            assertTrue("Expected " + index + " in " + row.group(0) + " for " + sql, row.group(3).contains(index));
+        }
+    }
+
+    private void assertNoTempSort(@NonNull String sql) {
+        for (String detail : explain(sql)) {
+            assertFalse("Sorts in " + detail + " for " + sql, detail.contains("TEMP B-TREE"));
+        }
+    }
+
+    @NonNull
+    private List<Matcher> episodeRows(@NonNull String sql) {
+        List<Matcher> rows = new ArrayList<>();
+        for (String detail : explain(sql)) {
+            Matcher row = PLAN_ROW.matcher(detail);
+            if (row.matches() && TABLE.equals(row.group(2))) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    @NonNull
+    private List<String> explain(@NonNull String sql) {
+        List<String> details = new ArrayList<>();
+        try (Cursor cursor = db.getOpenHelper().getReadableDatabase().query("EXPLAIN QUERY PLAN " + sql)) {
+            int detailColumn = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detailColumn));
+            }
+        }
+        return details;
+    }
+}
@@ -0,0 +1,121 @@
+package com.weinmann.ccr.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.weinmann.ccr.Util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+/*
+ * Runs Migrations against the exported schemas in app/schemas: each step on its own, and
+ * the whole chain from version 1 with data that every step has to carry along. The full
+ * chain finishes by opening the result with Room, which checks it against the entities.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+    private static final String TEST_DB = "migration-test";
+    private static final int FIRST_VERSION = 1;
+    private static final int CURRENT_VERSION = 10;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    @Test
+    public void eachMigrationMatchesNextSchema() throws IOException {
+        for (int version = FIRST_VERSION; version < CURRENT_VERSION; ++version) {
+            String name = TEST_DB + "-" + version;
+            helper.createDatabase(name, version).close();
+            helper.runMigrationsAndValidate(name, version + 1, true, Migrations.ALL).close();
+        }
+    }
+
+    @Test
+    public void migratesFirstVersionToCurrent() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, FIRST_VERSION)) {
+            db.execSQL("INSERT INTO podcast_metadata (id, title, url, maxDownloads, isActive) " +
+                    "VALUES (1, 'Podcast', 'https://podcasts.example.com/feed.xml', -1, 1)");
+            insertVersion1Episode(db, 1, "<p>Welcome &amp; hello</p>", "/podcasts/1.mp3", 1000);
+            insertVersion1Episode(db, 2, "Second <b>episode</b>", null, 0);
+        }
+
+        try (SupportSQLiteDatabase db = helper.runMigrationsAndValidate(
+                TEST_DB, CURRENT_VERSION, true, Migrations.ALL)) {
+            // 5 -> 6 moved descriptions into episode_description as compressed plain text
+            assertEquals("Welcome & hello", descriptionOf(db, 1));
+            assertEquals("Second episode", descriptionOf(db, 2));
+            // 4 -> 5 indexed them for search, 5 -> 6 replaced the HTML with the plain text
+            assertEquals(1, count(db, "SELECT docid FROM episode_fts WHERE episode_fts MATCH 'welcome'"));
+            assertEquals(0, count(db, "SELECT docid FROM episode_fts WHERE episode_fts MATCH 'b'"));
+            // 7 -> 8 summed what was already downloaded
+            try (Cursor cursor = db.query("SELECT bytesOnDisk, downloadedCount, unplayedCount " +
+                    "FROM podcast_stats WHERE podcastId = 1")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(1000, cursor.getLong(0));
+                assertEquals(1, cursor.getInt(1));
+                assertEquals(1, cursor.getInt(2));
+            }
+            // 9 -> 10 hashed the existing enclosure URLs
+            try (Cursor cursor = db.query("SELECT urlHash FROM episode_metadata WHERE id = 1")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(Util.hashUrl(enclosureUrl(1)), cursor.getLong(0));
+            }
+        }
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        AppDatabase appDb = Room.databaseBuilder(context, AppDatabase.class, TEST_DB)
+                .addMigrations(Migrations.ALL)
+                .addCallback(Triggers.CALLBACK)
+                .build();
+        try {
+            assertEquals(2, appDb.episodeMetadataDao().getActive().size());
+        } finally {
+            appDb.close();
+        }
+    }
+
+    private static void insertVersion1Episode(@NonNull SupportSQLiteDatabase db, long id, @NonNull String description,
+                                              String audioAbsolutePath, long contentLength) {
+        db.execSQL("INSERT INTO episode_metadata (id, podcastId, podcastName, title, description, enclosureUrl, " +
+                        "pubDateMillis, audioAbsolutePath, mimeType, contentLength, currentPos, duration, " +
+                        "isActive, isListenedTo, useForHistory) " +
+                        "VALUES (?, 1, 'Podcast', ?, ?, ?, ?, ?, 'audio/mpeg', ?, 0, 0, 1, 0, 1)",
+                new Object[]{id, "Episode " + id, description, enclosureUrl(id), id * 86_400_000L,
+                        audioAbsolutePath, contentLength});
+    }
+
+    @NonNull
+    private static String enclosureUrl(long episodeId) {
+        return "https://podcasts.example.com/" + episodeId + ".mp3";
+    }
+
+    @NonNull
+    private static String descriptionOf(@NonNull SupportSQLiteDatabase db, long episodeId) {
+        try (Cursor cursor = db.query("SELECT compressedText FROM episode_description WHERE episodeId = ?",
+                new Object[]{episodeId})) {
+            assertTrue(cursor.moveToFirst());
+            return Util.decompressText(cursor.getBlob(0));
+        }
+    }
+
+    private static int count(@NonNull SupportSQLiteDatabase db, @NonNull String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            return cursor.getCount();
+        }
+    }
+}
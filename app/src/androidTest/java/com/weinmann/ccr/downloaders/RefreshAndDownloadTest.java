@@ -0,0 +1,175 @@
+package com.weinmann.ccr.downloaders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.weinmann.ccr.Mp3SeekIndex;
+import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.Triggers;
+import com.weinmann.ccr.records.EpisodeMetadata;
+import com.weinmann.ccr.records.PodcastMetadata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Runs a refresh, parse and download through PodcastDownloader and AudioFileDownloader the
+ * way DownloadService drives them, against StandInServer and an in-memory database.
+ * Downloads go to a scratch directory instead of the real podcasts directory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RefreshAndDownloadTest {
+    private static final int EPISODES = 3;
+    private static final String FEED_URL = StandInServer.HOST + "/feed/" + EPISODES + ".xml";
+
+    private StandInServer server;
+    private AppDatabase db;
+    private File downloadDir;
+    private PodcastDownloader podcastDownloader;
+    private AudioFileDownloader audioFileDownloader;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        server = new StandInServer();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(Triggers.CALLBACK)
+                .build();
+        downloadDir = new File(context.getCacheDir(), "RefreshAndDownloadTest");
+        assertTrue(downloadDir.isDirectory() || downloadDir.mkdirs());
+
+        AtomicBoolean abortRequested = new AtomicBoolean(false);
+        podcastDownloader = new PodcastDownloader(context, db, abortRequested) {
+            @NonNull
+            @Override
+            protected HttpURLConnection createConnection(@NonNull URL url) throws IOException {
+                return super.createConnection(standIn(url));
+            }
+        };
+        audioFileDownloader = new AudioFileDownloader(context, abortRequested) {
+            @NonNull
+            @Override
+            protected HttpURLConnection createConnection(@NonNull URL url) throws IOException {
+                return super.createConnection(standIn(url));
+            }
+
+            @Override
+            protected File getPodcastsDir() {
+                return downloadDir;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        db.close();
+        server.close();
+        File[] files = downloadDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    @Test
+    public void refreshThenDownloadEveryEpisode() throws Exception {
+        PodcastMetadata podcast = insertPodcast();
+
+        podcastDownloader.loadSeenUrls();
+        String result = podcastDownloader.downloadPodcast(podcast);
+        assertTrue(result, result.contains(EPISODES + " new episodes"));
+
+        List<EpisodeMetadata> toDownload = db.episodeMetadataDao().getToDownload();
+        assertEquals(EPISODES, toDownload.size());
+
+        for (EpisodeMetadata episode : toDownload) {
+            assertNotNull(db.episodeDescriptionDao().getCompressedText(episode.id()));
+
+            EpisodeMetadata downloaded = audioFileDownloader.download(episode);
+            assertNull(audioFileDownloader.getFailureReason());
+
+            int length = audioLength(episode);
+            assertEquals(length, downloaded.contentLength());
+            assertTrue(downloaded.duration() > 0);
+            File audioFile = new File(downloaded.audioAbsolutePath());
+            assertArrayEquals(StandInServer.audioBytes(length), Files.readAllBytes(audioFile.toPath()));
+            assertNotNull(Mp3SeekIndex.read(audioFile));
+
+            db.episodeMetadataDao().update(downloaded);
+        }
+
+        assertTrue(db.episodeMetadataDao().getToDownload().isEmpty());
+    }
+
+    @Test
+    public void secondRefreshFindsNothingNew() throws Exception {
+        PodcastMetadata podcast = insertPodcast();
+        podcastDownloader.loadSeenUrls();
+        podcastDownloader.downloadPodcast(podcast);
+
+        podcastDownloader.loadSeenUrls();
+        String result = podcastDownloader.downloadPodcast(podcast);
+
+        assertTrue(result, result.contains("0 new episodes"));
+        assertEquals(EPISODES, db.episodeMetadataDao().getActive().size());
+    }
+
+    @Test
+    public void failedAudioLeavesEpisodeToDownload() throws Exception {
+        PodcastMetadata podcast = insertPodcast();
+        podcastDownloader.loadSeenUrls();
+        podcastDownloader.downloadPodcast(podcast);
+        EpisodeMetadata episode = db.episodeMetadataDao().getToDownload().get(0);
+        server.inject(new URL(episode.enclosureUrl()).getPath(), StandInServer.FAULT_SERVER_ERROR);
+
+        EpisodeMetadata result = audioFileDownloader.download(episode);
+
+        assertSame(episode, result);
+        String reason = audioFileDownloader.getFailureReason();
+        assertTrue(reason, reason != null && reason.contains("HTTP 503"));
+    }
+
+    @NonNull
+    private PodcastMetadata insertPodcast() {
+        long id = db.podcastMetadataDao().insert(new PodcastMetadata(0, "Stand-in feed", FEED_URL,
+                PodcastMetadata.UNLIMITED_MAX_DOWNLOADS, true));
+        return new PodcastMetadata(id, "Stand-in feed", FEED_URL, PodcastMetadata.UNLIMITED_MAX_DOWNLOADS, true);
+    }
+
+    @NonNull
+    private URL standIn(@NonNull URL url) {
+        return server.baseUrl().newBuilder().encodedPath(url.getPath()).build().url();
+    }
+
+    private static int audioLength(@NonNull EpisodeMetadata episode) {
+        for (int i = 1; i <= EPISODES; ++i) {
+            int length = StandInServer.feedAudioBytes(i);
+            if (episode.enclosureUrl().equals(StandInServer.HOST + StandInServer.audioPath(length))) {
+                return length;
+            }
+        }
+        throw new AssertionError("Not a stand-in enclosure: " + episode.enclosureUrl());
+    }
+}
@@ -0,0 +1,33 @@
+package com.weinmann.ccr;
+
+import android.app.Activity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+
+import com.weinmann.ccr.db.DaoBenchmark;
+
+/* Main menu entries for debug builds only; the release source set has a no-op twin */
+final class DebugMenu {
+    private DebugMenu() {
+    }
+
+    static void addItems(@NonNull Activity activity, @NonNull Menu menu) {
+        activity.getMenuInflater().inflate(R.menu.debug_menu, menu);
+    }
+
+    static boolean onItemSelected(@NonNull Activity activity, @NonNull MenuItem item) {
+        if (item.getItemId() == R.id.action_run_db_benchmark) {
+            Toast.makeText(activity, "Database benchmark started", Toast.LENGTH_SHORT).show();
+            DaoBenchmark.start(activity, file -> Toast.makeText(
+                    activity,
+                    file == null ? "Database benchmark failed" : "Benchmark written to " + file.getName(),
+                    Toast.LENGTH_LONG
+            ).show());
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,236 @@
+package com.weinmann.ccr.db;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+
+import com.weinmann.ccr.Util;
+import com.weinmann.ccr.records.EpisodeMetadata;
+import com.weinmann.ccr.records.EpisodeSummary;
+import com.weinmann.ccr.records.PodcastMetadata;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/*
+ * Times the hot DAO queries against a scratch database filled to realistic sizes and writes
+ * the results as JSON to <external files>/benchmarks so runs from different builds can be
+ * diffed. Only in debug builds, started from DebugMenu; never touches the real database.
+ */
+public final class DaoBenchmark {
+    private static final String TAG = "DaoBenchmark";
+    private static final String DB_NAME = "Ccr_benchmark";
+
+    private static final int[] EPISODE_COUNTS = {1_000, 10_000, 100_000};
+    private static final int PODCAST_COUNT = 500;
+    private static final int ACTIVE_PERCENT = 5;
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 15;
+    private static final long OBSERVER_TIMEOUT_SECONDS = 5;
+    // Fixed so every build benchmarks the same data
+    private static final long SEED = 42L;
+
+    private DaoBenchmark() {
+    }
+
+    /* Runs on its own thread; onDone gets the result file, or null on failure, on the main thread */
+    public static void start(@NonNull Context context, @NonNull Consumer<File> onDone) {
+        Context appContext = context.getApplicationContext();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        new Thread(() -> {
+            File result = null;
+            try {
+                result = run(appContext, mainHandler);
+            } catch (Exception e) {
+                Log.e(TAG, "Benchmark failed", e);
+            }
+            File finalResult = result;
+            mainHandler.post(() -> onDone.accept(finalResult));
+        }, "dao-benchmark").start();
+    }
+
+    @NonNull
+    private static File run(@NonNull Context context, @NonNull Handler mainHandler)
+            throws JSONException, IOException, InterruptedException {
+        JSONObject report = new JSONObject();
+        report.put("timestampMillis", System.currentTimeMillis());
+        report.put("device", android.os.Build.MODEL);
+        report.put("sdk", android.os.Build.VERSION.SDK_INT);
+        report.put("runs", MEASURED_RUNS);
+
+        JSONArray scales = new JSONArray();
+        for (int episodeCount : EPISODE_COUNTS) {
+            scales.put(runScale(context, mainHandler, episodeCount));
+        }
+        report.put("scales", scales);
+
+        File dir = new File(context.getExternalFilesDir(null), "benchmarks");
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create benchmarks directory");
+        }
+
+        File file = new File(dir, "dao-benchmark-" + System.currentTimeMillis() + ".json");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(report.toString(2));
+        }
+        Log.i(TAG, "Wrote " + file.getAbsolutePath());
+        return file;
+    }
+
+    @NonNull
+    private static JSONObject runScale(@NonNull Context context, @NonNull Handler mainHandler, int episodeCount)
+            throws JSONException, InterruptedException {
+        context.deleteDatabase(DB_NAME);
+        AppDatabase db = Room.databaseBuilder(context, AppDatabase.class, DB_NAME)
+                .addMigrations(Migrations.ALL)
+                .addCallback(Triggers.CALLBACK)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+
+        try {
+            Random random = new Random(SEED);
+            List<String> urls = populate(db, random, episodeCount);
+            EpisodeMetadataDao episodeDao = db.episodeMetadataDao();
+            PodcastMetadataDao podcastDao = db.podcastMetadataDao();
+            EpisodeMetadata sample = episodeDao.getByUrl(urls.get(0));
+
+            JSONObject timings = new JSONObject();
+            timings.put("episodeGetActive", measure(run -> episodeDao.getActive()));
+            timings.put("episodeGetToDownload", measure(run -> episodeDao.getToDownload()));
+            timings.put("episodeGetByUrl", measure(run -> episodeDao.getByUrl(urls.get(random.nextInt(urls.size())))));
+            timings.put("episodeUpdate", measure(run -> episodeDao.update(
+                    EpisodeMetadata.createCopyForDownload(sample, sample.audioAbsolutePath(), run + 1, sample.duration()))));
+            timings.put("episodeClearAllHistory", measure(run -> episodeDao.clearAllHistory()));
+            timings.put("podcastGetActive", measure(run -> podcastDao.getActive()));
+            timings.put("observerReemission", measureObserver(mainHandler, episodeDao, sample.id()));
+
+            JSONObject scale = new JSONObject();
+            scale.put("episodes", episodeCount);
+            scale.put("podcasts", PODCAST_COUNT);
+            scale.put("timings", timings);
+            Log.i(TAG, scale.toString());
+            return scale;
+        } finally {
+            db.close();
+            context.deleteDatabase(DB_NAME);
+        }
+    }
+
+    /* Returns the enclosure URLs in insertion order */
+    @NonNull
+    private static List<String> populate(@NonNull AppDatabase db, @NonNull Random random, int episodeCount) {
+        return db.runInTransaction(() -> {
+            PodcastMetadataDao podcastDao = db.podcastMetadataDao();
+            for (int p = 1; p <= PODCAST_COUNT; ++p) {
+                podcastDao.insert(new PodcastMetadata(0L, "Podcast " + p, "https://example.com/feed/" + p, 2, true));
+            }
+
+            EpisodeMetadataDao episodeDao = db.episodeMetadataDao();
+            String[] urls = new String[episodeCount];
+            long now = System.currentTimeMillis();
+            for (int e = 0; e < episodeCount; ++e) {
+                long podcastId = 1 + random.nextInt(PODCAST_COUNT);
+                boolean isActive = random.nextInt(100) < ACTIVE_PERCENT;
+                boolean isDownloaded = isActive && random.nextBoolean();
+                urls[e] = "https://example.com/audio/" + podcastId + "/" + e + ".mp3";
+                episodeDao.insert(new EpisodeMetadata(
+                        0L,
+                        podcastId,
+                        "Podcast " + podcastId,
+                        "Episode " + e,
+                        urls[e],
+                        now - TimeUnit.HOURS.toMillis(e),
+                        isDownloaded ? "/benchmark/" + e + ".mp3" : null,
+                        "audio/mpeg",
+                        isDownloaded ? 50_000_000L : 0L,
+                        0,
+                        3_600_000,
+                        isActive,
+                        random.nextBoolean(),
+                        true,
+                        Util.hashUrl(urls[e])));
+            }
+            return Arrays.asList(urls);
+        });
+    }
+
+    @NonNull
+    private static JSONObject measure(@NonNull IntConsumer operation) throws JSONException {
+        for (int run = 0; run < WARMUP_RUNS; ++run) {
+            operation.accept(run);
+        }
+
+        long[] nanos = new long[MEASURED_RUNS];
+        for (int run = 0; run < MEASURED_RUNS; ++run) {
+            long start = System.nanoTime();
+            operation.accept(WARMUP_RUNS + run);
+            nanos[run] = System.nanoTime() - start;
+        }
+        return summarize(nanos);
+    }
+
+    /* Time from a listened-to write until the active-list LiveData delivers on the main thread */
+    @NonNull
+    private static JSONObject measureObserver(@NonNull Handler mainHandler,
+                                              @NonNull EpisodeMetadataDao dao,
+                                              long episodeId) throws JSONException, InterruptedException {
+        LiveData<List<EpisodeSummary>> liveData = dao.getObservableSummaries();
+        CountDownLatch[] latch = {new CountDownLatch(1)};
+        Observer<List<EpisodeSummary>> observer = list -> latch[0].countDown();
+        mainHandler.post(() -> liveData.observeForever(observer));
+
+        try {
+            // The first emission is the initial load, not a re-emission
+            if (!latch[0].await(OBSERVER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Observer never received the initial list");
+            }
+
+            long[] nanos = new long[MEASURED_RUNS];
+            for (int run = 0; run < MEASURED_RUNS; ++run) {
+                latch[0] = new CountDownLatch(1);
+                long start = System.nanoTime();
+                dao.markListenedTo(episodeId, run + 1);
+                if (!latch[0].await(OBSERVER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Observer did not re-emit after a write");
+                }
+                nanos[run] = System.nanoTime() - start;
+            }
+            return summarize(nanos);
+        } finally {
+            mainHandler.post(() -> liveData.removeObserver(observer));
+        }
+    }
+
+    @NonNull
+    private static JSONObject summarize(@NonNull long[] nanos) throws JSONException {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+
+        JSONObject summary = new JSONObject();
+        summary.put("minMicros", sorted[0] / 1000);
+        summary.put("medianMicros", sorted[sorted.length / 2] / 1000);
+        summary.put("p95Micros", sorted[(int) Math.ceil(sorted.length * 0.95) - 1] / 1000);
+        summary.put("maxMicros", sorted[sorted.length - 1] / 1000);
+        return summary;
+    }
+}
@@ -0,0 +1,30 @@
+package com.weinmann.ccr;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import org.jetbrains.annotations.Contract;
+
+/*
+ * Immutable snapshot of the user settings. CcrApplication keeps the current one and swaps
+ * it when the preferences change, so hot paths read fields instead of SharedPreferences.
+ */
+public record AppSettings(
+        int maxDownloadsPerPodcast,
+        int rewindSeconds,
+        int forwardSeconds,
+        float playbackSpeed,
+        boolean deleteAfterListening)
+{
+    @NonNull
+    @Contract("_ -> new")
+    public static AppSettings fromPreferences(@NonNull SharedPreferences prefs) {
+        return new AppSettings(
+                prefs.getInt(CcrApplication.KEY_MAX_DOWNLOADS, CcrApplication.DEFAULT_MAX_DOWNLOADS_PER_PODCAST),
+                prefs.getInt(CcrApplication.KEY_REWIND_SECONDS, CcrApplication.DEFAULT_REWIND_SECONDS),
+                prefs.getInt(CcrApplication.KEY_FORWARD_SECONDS, CcrApplication.DEFAULT_FORWARD_SECONDS),
+                prefs.getFloat(CcrApplication.KEY_PLAYBACK_SPEED, CcrApplication.DEFAULT_PLAYBACK_SPEED),
+                prefs.getBoolean(CcrApplication.KEY_DELETE_AFTER_LISTENING, false));
+    }
+}
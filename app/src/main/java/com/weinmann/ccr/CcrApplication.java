@@ -1,6 +1,10 @@
 package com.weinmann.ccr;
 
 import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
 
 import com.weinmann.ccr.records.PodcastMetadata;
 
@@ -23,4 +27,27 @@ public class CcrApplication extends Application {
     public static final List<PodcastMetadata> DefaultPodcasts = List.of(
         new PodcastMetadata(0L, "The Clark Howard Podcast", "https://feeds.megaphone.fm/clarkhoward", 2, true)
     );
+
+    private volatile AppSettings settings;
+
+    // SharedPreferences only holds listeners weakly, so keep a strong reference here
+    private final SharedPreferences.OnSharedPreferenceChangeListener settingsListener = (prefs, key) -> {
+        if (!KEY_LAST_EPISODE_ID.equals(key)) {
+            settings = AppSettings.fromPreferences(prefs);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        settings = AppSettings.fromPreferences(prefs);
+        prefs.registerOnSharedPreferenceChangeListener(settingsListener);
+    }
+
+    @NonNull
+    public static AppSettings getSettings(@NonNull Context context) {
+        return ((CcrApplication) context.getApplicationContext()).settings;
+    }
 }
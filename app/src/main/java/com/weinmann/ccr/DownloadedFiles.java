@@ -0,0 +1,146 @@
+package com.weinmann.ccr;
+
+import android.content.Context;
+import android.os.Environment;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * In-memory index of the audio files in the podcasts directory, so the playback queue can
+ * check for a download without touching storage. Only the downloader marks a file present
+ * once it is complete; EpisodeDeleter and a FileObserver for changes made behind our back
+ * mark files absent, and a background scan rebuilds the index when it is created or the
+ * directory goes away.
+ */
+public class DownloadedFiles {
+    private static final String TAG = "DownloadedFiles";
+
+    // Not CLOSE_WRITE or MOVED_TO: an aborted or truncated download closes its file too
+    private static final int WATCH_MASK = FileObserver.DELETE | FileObserver.MOVED_FROM |
+            FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static volatile DownloadedFiles INSTANCE;
+
+    private final Set<String> presentPaths = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService scanExecutor = Executors.newSingleThreadExecutor();
+
+    @Nullable
+    private final File podcastsDir;
+    @Nullable
+    private final FileObserver observer;
+
+    public static DownloadedFiles getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (DownloadedFiles.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new DownloadedFiles(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private DownloadedFiles(@NonNull Context context) {
+        podcastsDir = context.getExternalFilesDir(Environment.DIRECTORY_PODCASTS);
+        // Watching a directory that doesn't exist yet silently watches nothing
+        if (podcastsDir != null && !podcastsDir.exists() && !podcastsDir.mkdirs()) {
+            Log.w(TAG, "Failed to create " + podcastsDir);
+        }
+        observer = podcastsDir == null ? null : createObserver(podcastsDir);
+        if (observer != null) {
+            observer.startWatching();
+        }
+        scanExecutor.execute(this::reconcile);
+    }
+
+    /* Cheap enough for the main thread; no filesystem access */
+    public boolean contains(@Nullable String audioAbsolutePath) {
+        return audioAbsolutePath != null && presentPaths.contains(audioAbsolutePath);
+    }
+
+    public void markPresent(@NonNull String audioAbsolutePath) {
+        if (presentPaths.add(audioAbsolutePath)) {
+            notifyListeners();
+        }
+    }
+
+    public void markAbsent(@NonNull String audioAbsolutePath) {
+        if (presentPaths.remove(audioAbsolutePath)) {
+            notifyListeners();
+        }
+    }
+
+    /* Listeners run on the main thread after the set of present files changed */
+    public void addListener(@NonNull Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /* Rebuilds the index from a directory listing; runs on the scan thread */
+    private void reconcile() {
+        Set<String> scanned = new HashSet<>();
+        File[] files = podcastsDir == null ? null : podcastsDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && !file.getName().endsWith(Mp3SeekIndex.FILE_SUFFIX)) {
+                    scanned.add(file.getAbsolutePath());
+                }
+            }
+        }
+
+        boolean changed = presentPaths.retainAll(scanned);
+        changed |= presentPaths.addAll(scanned);
+        Log.d(TAG, "Reconciled " + scanned.size() + " downloaded files");
+
+        if (changed) {
+            notifyListeners();
+        }
+    }
+
+    private void notifyListeners() {
+        mainHandler.post(() -> {
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        });
+    }
+
+    @NonNull
+    @SuppressWarnings("deprecation") // FileObserver(File, int) needs API 29
+    private FileObserver createObserver(@NonNull File dir) {
+        return new FileObserver(dir.getAbsolutePath(), WATCH_MASK) {
+            @Override
+            public void onEvent(int event, @Nullable String path) {
+                switch (event & FileObserver.ALL_EVENTS) {
+                    case FileObserver.DELETE:
+                    case FileObserver.MOVED_FROM:
+                        if (path != null) markAbsent(new File(dir, path).getAbsolutePath());
+                        break;
+                    case FileObserver.DELETE_SELF:
+                    case FileObserver.MOVE_SELF:
+                        scanExecutor.execute(DownloadedFiles.this::reconcile);
+                        break;
+                }
+            }
+        };
+    }
+}
@@ -16,9 +16,14 @@ import com.weinmann.ccr.records.PodcastMetadata;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class EditPodcastActivity extends AppCompatActivity {
+    // Fetching a feed can take as long as the host likes; keep it off the DB reader pool
+    private static final ExecutorService networkExecutor = Executors.newSingleThreadExecutor();
+
     private long podcastId;
     private EditText editUrl;
     private Button btnTestEditPodcast;
@@ -66,7 +71,7 @@ public class EditPodcastActivity extends AppCompatActivity {
     
     private void refreshViews() {
         if (podcastId > 0) {
-            AppDatabase.getExecutor().execute(() -> {
+            AppDatabase.getReadExecutor().execute(() -> {
                 AppDatabase db = AppDatabase.getInstance(this);
                 PodcastMetadata podcast = db.podcastMetadataDao().getById(podcastId);
                 runOnUiThread(() -> setViewFromPodcast(podcast));
@@ -76,7 +81,7 @@ public class EditPodcastActivity extends AppCompatActivity {
 
     private void setupClickListeners() {
         btnSavePodcast.setOnClickListener(v ->
-                AppDatabase.getExecutor().execute(() -> {
+                AppDatabase.getWriteExecutor().execute(() -> {
             AppDatabase db = AppDatabase.getInstance(this);
             PodcastMetadata podcast = getPodcastFromUi();
 
@@ -93,7 +98,7 @@ public class EditPodcastActivity extends AppCompatActivity {
             PodcastDownloader downloader = new PodcastDownloader(this, new AtomicBoolean(false));
             PodcastMetadata podcast = getPodcastFromUi();
 
-            AppDatabase.getExecutor().execute(() -> {
+            networkExecutor.execute(() -> {
                 int result = downloader.testPodcast(podcast);
 
                 runOnUiThread(() -> {
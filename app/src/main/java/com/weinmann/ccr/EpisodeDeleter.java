@@ -5,60 +5,112 @@ import android.content.Context;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+
 import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.DbExecutors;
 import com.weinmann.ccr.db.EpisodeMetadataDao;
-import com.weinmann.ccr.records.EpisodeMetadata;
+
+import org.jetbrains.annotations.Contract;
 
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.function.Predicate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @SuppressWarnings("ClassCanBeRecord")
 public class EpisodeDeleter {
     private final static String TAG = "EpisodeDeleter";
+
+    // Unlinking files is slow on some storage; keep it off the DB writer
+    private static final ExecutorService fileDeleteExecutor = Executors.newSingleThreadExecutor();
+
     private final Context context;
 
+    /* Which active episodes to delete; 0 / Long.MAX_VALUE mean "don't filter on this" */
+    public record Criteria(boolean onlyListenedTo, long podcastId, long episodeId, long publishedBeforeMillis) {
+        @NonNull
+        @Contract(" -> new")
+        public static Criteria all() {
+            return new Criteria(false, 0L, 0L, Long.MAX_VALUE);
+        }
+
+        @NonNull
+        @Contract(" -> new")
+        public static Criteria listenedTo() {
+            return new Criteria(true, 0L, 0L, Long.MAX_VALUE);
+        }
+
+        @NonNull
+        @Contract("_ -> new")
+        public static Criteria forPodcast(long podcastId) {
+            return new Criteria(false, podcastId, 0L, Long.MAX_VALUE);
+        }
+
+        @NonNull
+        @Contract("_ -> new")
+        public static Criteria forEpisode(long episodeId) {
+            return new Criteria(false, 0L, episodeId, Long.MAX_VALUE);
+        }
+
+        @NonNull
+        @Contract("_ -> new")
+        public static Criteria publishedBefore(long millis) {
+            return new Criteria(false, 0L, 0L, millis);
+        }
+    }
+
     public EpisodeDeleter(Context context) {
         this.context = context;
     }
 
-    public void deleteEpisodes(Predicate<EpisodeMetadata> filter) {
-        AppDatabase.getExecutor().execute(() -> {
+    public void deleteEpisodes(@NonNull Criteria criteria) {
+        AppDatabase.executeWrite(DbExecutors.PRIORITY_BULK, () -> {
             AppDatabase db = AppDatabase.getInstance(context);
             EpisodeMetadataDao dao = db.episodeMetadataDao();
-            List<EpisodeMetadata> episodesToDelete = dao.getActive();
-
-            if (episodesToDelete != null) {
-                episodesToDelete.removeIf(e -> !filter.test(e));
-
-                for (EpisodeMetadata episode : episodesToDelete) {
-                    EpisodeMetadata updatedEpisode = EpisodeMetadata.createCopyForUpdate(
-                            episode,
-                            0,
-                            false);
-                    dao.update(updatedEpisode);
-
-
-                    if (episode.audioAbsolutePath() != null) {
-                        try {
-                            Path path = Paths.get(episode.audioAbsolutePath());
-                            Files.delete(path);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Could not delete audio file: " + episode.audioAbsolutePath(), e);
-                        }
-                    }
-                }
-
-                if (context instanceof Activity activity) {
-                    activity.runOnUiThread(() -> Toast.makeText(
-                            activity,
-                            episodesToDelete.size() + " episodes deleted",
-                            Toast.LENGTH_LONG
-                    ).show());
-                }
+
+            // One entry per matched episode; null for episodes that were never downloaded
+            List<String> audioAbsolutePaths = db.runInTransaction(() -> {
+                List<String> matched = dao.getAudioPathsToDelete(
+                        criteria.onlyListenedTo(),
+                        criteria.podcastId(),
+                        criteria.episodeId(),
+                        criteria.publishedBeforeMillis());
+                dao.deactivate(
+                        criteria.onlyListenedTo(),
+                        criteria.podcastId(),
+                        criteria.episodeId(),
+                        criteria.publishedBeforeMillis());
+                return matched;
+            });
+
+            DownloadedFiles downloadedFiles = DownloadedFiles.getInstance(context);
+            for (String audioAbsolutePath : audioAbsolutePaths) {
+                if (audioAbsolutePath != null) downloadedFiles.markAbsent(audioAbsolutePath);
+            }
+            fileDeleteExecutor.execute(() -> deleteFiles(audioAbsolutePaths));
+
+            if (context instanceof Activity activity) {
+                activity.runOnUiThread(() -> Toast.makeText(
+                        activity,
+                        audioAbsolutePaths.size() + " episodes deleted",
+                        Toast.LENGTH_LONG
+                ).show());
             }
         });
     }
+
+    private static void deleteFiles(List<String> audioAbsolutePaths) {
+        for (String audioAbsolutePath : audioAbsolutePaths) {
+            if (audioAbsolutePath == null) continue;
+
+            try {
+                Files.deleteIfExists(Paths.get(audioAbsolutePath));
+                Files.deleteIfExists(Mp3SeekIndex.fileFor(audioAbsolutePath).toPath());
+            } catch (Exception e) {
+                Log.e(TAG, "Could not delete audio file: " + audioAbsolutePath, e);
+            }
+        }
+    }
 }
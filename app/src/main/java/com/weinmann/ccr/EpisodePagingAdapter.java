@@ -0,0 +1,102 @@
+package com.weinmann.ccr;
+
+import android.graphics.Color;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.weinmann.ccr.records.EpisodeSummary;
+
+public class EpisodePagingAdapter extends PagingDataAdapter<EpisodeSummary, EpisodePagingAdapter.ViewHolder> {
+
+    public interface OnEpisodeClickListener {
+        void onEpisodeClick(View view, EpisodeSummary episode);
+    }
+
+    private static final DiffUtil.ItemCallback<EpisodeSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull EpisodeSummary oldItem, @NonNull EpisodeSummary newItem) {
+            return oldItem.id() == newItem.id();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull EpisodeSummary oldItem, @NonNull EpisodeSummary newItem) {
+            return oldItem.sameListingAs(newItem);
+        }
+    };
+
+    private final OnEpisodeClickListener clickListener;
+    private final OnEpisodeClickListener longClickListener;
+
+    public EpisodePagingAdapter(OnEpisodeClickListener clickListener, OnEpisodeClickListener longClickListener) {
+        super(DIFF_CALLBACK);
+        this.clickListener = clickListener;
+        this.longClickListener = longClickListener;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_1, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+
+        // Set once per holder; the episode is looked up when clicked, not captured at bind time
+        view.setOnClickListener(v -> {
+            EpisodeSummary episode = episodeAt(holder);
+            if (episode != null) clickListener.onEpisodeClick(v, episode);
+        });
+        view.setOnLongClickListener(v -> {
+            EpisodeSummary episode = episodeAt(holder);
+            if (episode == null) return false;
+            longClickListener.onEpisodeClick(v, episode);
+            return true;
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.bind(getItem(position));
+    }
+
+    /* Null for a placeholder, or while the holder is between positions */
+    private EpisodeSummary episodeAt(@NonNull ViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        // peek() so a click doesn't count as an access that triggers page loads
+        return position == RecyclerView.NO_POSITION ? null : peek(position);
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        private final TextView textView;
+
+        public ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            textView = itemView.findViewById(android.R.id.text1);
+        }
+
+        void bind(EpisodeSummary episode) {
+            // Null while a placeholder page is still loading
+            if (episode == null) {
+                textView.setText("");
+                itemView.setBackgroundColor(Color.TRANSPARENT);
+                return;
+            }
+
+            textView.setText(episode.toString());
+            if (episode.isListenedTo() || !episode.isActive()) {
+                itemView.setBackgroundColor(Color.LTGRAY);
+                textView.setTextColor(Color.DKGRAY);
+            } else {
+                itemView.setBackgroundColor(Color.TRANSPARENT);
+                textView.setTextColor(Color.WHITE);
+            }
+        }
+    }
+}
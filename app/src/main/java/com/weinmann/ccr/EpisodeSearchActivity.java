@@ -0,0 +1,119 @@
+package com.weinmann.ccr;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.view.inputmethod.EditorInfo;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.records.EpisodeSummary;
+import com.weinmann.ccr.services.IMediaPlayerService;
+import com.weinmann.ccr.services.MediaPlayerService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EpisodeSearchActivity extends AppCompatActivity {
+    private static final int MAX_RESULTS = 100;
+
+    private final List<EpisodeSummary> results = new ArrayList<>();
+    private ArrayAdapter<EpisodeSummary> adapter;
+    private EditText searchText;
+    private IMediaPlayerService mediaPlayerService;
+    private boolean isServiceBound = false;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            MediaPlayerService.LocalBinder binder = (MediaPlayerService.LocalBinder) service;
+            mediaPlayerService = binder.getService();
+            isServiceBound = true;
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            isServiceBound = false;
+            mediaPlayerService = null;
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_episode_search);
+
+        searchText = findViewById(R.id.searchText);
+        Button searchButton = findViewById(R.id.searchButton);
+        ListView listView = findViewById(R.id.listViewResults);
+
+        adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, results);
+        listView.setAdapter(adapter);
+
+        searchButton.setOnClickListener(v -> doSearch());
+
+        searchText.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                doSearch();
+                return true;
+            }
+            return false;
+        });
+
+        listView.setOnItemClickListener((parent, view, position, id) -> {
+            EpisodeSummary episode = results.get(position);
+            if (!isServiceBound || mediaPlayerService == null) return;
+
+            if (!mediaPlayerService.playEpisodeById(episode.id())) {
+                Toast.makeText(this, R.string.episode_not_downloaded, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        Intent intent = new Intent(this, MediaPlayerService.class);
+        bindService(intent, serviceConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (isServiceBound) {
+            unbindService(serviceConnection);
+            isServiceBound = false;
+        }
+    }
+
+    private void doSearch() {
+        String ftsQuery = Util.toFtsQuery(searchText.getText().toString());
+        if (ftsQuery.isEmpty()) {
+            Toast.makeText(this, "Enter search term", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        AppDatabase.getReadExecutor().execute(() -> {
+            AppDatabase db = AppDatabase.getInstance(this);
+            List<EpisodeSummary> found = db.episodeMetadataDao().search(ftsQuery, MAX_RESULTS);
+
+            runOnUiThread(() -> {
+                results.clear();
+                results.addAll(found);
+                adapter.notifyDataSetChanged();
+                if (found.isEmpty()) {
+                    Toast.makeText(this, "No matching episodes", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+    }
+}
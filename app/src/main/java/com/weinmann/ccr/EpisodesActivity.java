@@ -4,42 +4,34 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
-import android.graphics.Color;
 import android.os.Bundle;
 import android.os.IBinder;
-import android.util.Log;
-import android.view.ContextMenu;
 import android.view.Menu;
-import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
-import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
-import android.widget.TextView;
+import android.widget.PopupMenu;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.weinmann.ccr.db.AppDatabase;
-import com.weinmann.ccr.db.EpisodeMetadataDao;
-import com.weinmann.ccr.records.EpisodeMetadata;
+import com.weinmann.ccr.db.DbExecutors;
+import com.weinmann.ccr.records.EpisodeSummary;
 import com.weinmann.ccr.services.IMediaPlayerService;
 import com.weinmann.ccr.services.MediaPlayerService;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 public class EpisodesActivity extends AppCompatActivity {
 
-    private static final String TAG = "EpisodesActivity";
-    private final List<EpisodeMetadata> episodes = new ArrayList<>();
-    private ArrayAdapter<EpisodeMetadata> adapter;
-    private ListView lvEpisodes;
+    private static final long OLD_EPISODE_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private EpisodesViewModel viewModel;
+    private EpisodePagingAdapter adapter;
     private IMediaPlayerService mediaPlayerService;
     private boolean isServiceBound = false;
     private final EpisodeDeleter episodeDeleter = new EpisodeDeleter(this);
@@ -64,8 +56,8 @@ public class EpisodesActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_episodes);
 
+        viewModel = new ViewModelProvider(this).get(EpisodesViewModel.class);
         initViews();
-        setupClickListeners();
     }
 
     @Override
@@ -74,18 +66,41 @@ public class EpisodesActivity extends AppCompatActivity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem toggleItem = menu.findItem(R.id.action_toggle_history);
+        toggleItem.setTitle(viewModel.isShowingHistory() ? R.string.show_downloaded : R.string.show_history);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
-        if (item.getItemId() == R.id.action_delete_all_episodes) {
-            episodeDeleter.deleteEpisodes(e -> true);
+        if (item.getItemId() == R.id.action_search_episodes) {
+            startActivity(new Intent(this, EpisodeSearchActivity.class));
+            return true;
+        } else if (item.getItemId() == R.id.action_toggle_history) {
+            viewModel.toggleHistory();
+            // The pager asks the factory for a new PagingSource, which now reads the other view
+            adapter.refresh();
+            invalidateOptionsMenu();
+            return true;
+        } else if (item.getItemId() == R.id.action_delete_all_episodes) {
+            episodeDeleter.deleteEpisodes(EpisodeDeleter.Criteria.all());
             return true;
         } else if (item.getItemId() == R.id.action_delete_after_listening_episodes) {
-            episodeDeleter.deleteEpisodes(EpisodeMetadata::isListenedTo);
+            episodeDeleter.deleteEpisodes(EpisodeDeleter.Criteria.listenedTo());
+            return true;
+        } else if (item.getItemId() == R.id.action_delete_old_episodes) {
+            episodeDeleter.deleteEpisodes(EpisodeDeleter.Criteria.publishedBefore(
+                    System.currentTimeMillis() - OLD_EPISODE_AGE_MILLIS));
             return true;
         } else if (item.getItemId() == R.id.action_clear_history) {
-            AppDatabase.getExecutor().execute(() -> {
+            AppDatabase.executeWrite(DbExecutors.PRIORITY_BULK, () -> {
                 AppDatabase db = AppDatabase.getInstance(this);
-                db.episodeMetadataDao().clearAllHistory();
+                db.runInTransaction(() -> {
+                    db.episodeMetadataDao().clearAllHistory();
+                    db.episodeHistoryDao().deleteAll();
+                });
 
                 runOnUiThread(() -> Toast.makeText(
                         EpisodesActivity.this,
@@ -98,36 +113,6 @@ public class EpisodesActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
-    // CONTEXT MENU CREATION
-    @Override
-    public void onCreateContextMenu(ContextMenu menu, View v, ContextMenu.ContextMenuInfo menuInfo) {
-        super.onCreateContextMenu(menu, v, menuInfo);
-
-        MenuInflater inflater = getMenuInflater();
-        inflater.inflate(R.menu.episode_context_menu, menu);
-    }
-
-    // CONTEXT MENU HANDLING
-    @Override
-    public boolean onContextItemSelected(@NonNull MenuItem item) {
-        AdapterView.AdapterContextMenuInfo info =
-                (AdapterView.AdapterContextMenuInfo) item.getMenuInfo();
-
-        if (info != null) {
-
-            if (item.getItemId() == R.id.menu_play_episode) {
-                mediaPlayerService.setEpisodeIndex(info.position, true);
-                return true;
-            } else if (item.getItemId() == R.id.menu_delete_episode) {
-                EpisodeMetadata episode = episodes.get(info.position);
-                episodeDeleter.deleteEpisodes(e -> e.id() == episode.id());
-                return true;
-            }
-        }
-
-        return super.onContextItemSelected(item);
-    }
-
     @Override
     protected void onStart() {
         super.onStart();
@@ -145,43 +130,42 @@ public class EpisodesActivity extends AppCompatActivity {
     }
 
     private void initViews() {
-        lvEpisodes = findViewById(R.id.episodeList);
-        registerForContextMenu(lvEpisodes);
+        RecyclerView rvEpisodes = findViewById(R.id.episodeList);
+        rvEpisodes.setLayoutManager(new LinearLayoutManager(this));
 
-        adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, episodes) {
-            @NonNull
-            @Override
-            public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-                View view = super.getView(position, convertView, parent);
-                TextView textView = view.findViewById(android.R.id.text1);
-                
-                EpisodeMetadata episode = getItem(position);
-                if (episode != null && episode.isListenedTo()) {
-                    view.setBackgroundColor(Color.LTGRAY);
-                    textView.setTextColor(Color.DKGRAY);
-                } else {
-                    view.setBackgroundColor(Color.TRANSPARENT);
-                    textView.setTextColor(Color.WHITE);
-                }
-                return view;
-            }
-        };
-        lvEpisodes.setAdapter(adapter);
+        adapter = new EpisodePagingAdapter(
+                (view, episode) -> playEpisode(episode),
+                this::showEpisodeMenu);
+        rvEpisodes.setAdapter(adapter);
+
+        // Cached in the view model, so a rotation redelivers the loaded pages instead of reloading
+        viewModel.getEpisodes().observe(this, pagingData ->
+                adapter.submitData(getLifecycle(), pagingData));
+    }
 
-        AppDatabase db = AppDatabase.getInstance(this);
-        EpisodeMetadataDao dao = db.episodeMetadataDao();
+    private void showEpisodeMenu(View anchor, EpisodeSummary episode) {
+        PopupMenu popupMenu = new PopupMenu(this, anchor);
+        popupMenu.getMenuInflater().inflate(R.menu.episode_context_menu, popupMenu.getMenu());
 
-        dao.getObservable().observe(this, newEpisodes -> {
-            episodes.clear();
-            episodes.addAll(newEpisodes);
-            adapter.notifyDataSetChanged();
-            Log.d(TAG, String.format(Locale.getDefault(), "Active episodes updated: %d",
-                    newEpisodes.size()));
+        popupMenu.setOnMenuItemClickListener(item -> {
+            if (item.getItemId() == R.id.menu_play_episode) {
+                playEpisode(episode);
+                return true;
+            } else if (item.getItemId() == R.id.menu_delete_episode) {
+                episodeDeleter.deleteEpisodes(EpisodeDeleter.Criteria.forEpisode(episode.id()));
+                return true;
+            }
+            return false;
         });
+
+        popupMenu.show();
     }
 
-    private void setupClickListeners() {
-        lvEpisodes.setOnItemClickListener((parent, view, position, id) ->
-            mediaPlayerService.setEpisodeIndex(position, true));
+    private void playEpisode(EpisodeSummary episode) {
+        if (!isServiceBound || mediaPlayerService == null) return;
+
+        if (!mediaPlayerService.playEpisodeById(episode.id())) {
+            Toast.makeText(this, R.string.episode_not_downloaded, Toast.LENGTH_SHORT).show();
+        }
     }
 }
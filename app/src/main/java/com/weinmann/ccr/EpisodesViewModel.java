@@ -0,0 +1,47 @@
+package com.weinmann.ccr;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+
+import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.EpisodeMetadataDao;
+import com.weinmann.ccr.records.EpisodeSummary;
+
+/* Keeps the episode pager, its loaded pages and the history toggle across configuration changes */
+public class EpisodesViewModel extends AndroidViewModel {
+    private static final int PAGE_SIZE = 50;
+
+    private final LiveData<PagingData<EpisodeSummary>> episodes;
+    private volatile boolean showHistory = false;
+
+    public EpisodesViewModel(@NonNull Application application) {
+        super(application);
+        EpisodeMetadataDao dao = AppDatabase.getInstance(application).episodeMetadataDao();
+
+        Pager<Integer, EpisodeSummary> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE),
+                () -> showHistory ? dao.getHistoryPaged() : dao.getActivePaged());
+        episodes = PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), this);
+    }
+
+    @NonNull
+    public LiveData<PagingData<EpisodeSummary>> getEpisodes() {
+        return episodes;
+    }
+
+    public boolean isShowingHistory() {
+        return showHistory;
+    }
+
+    /* Takes effect on the next PagingSource, so follow with a refresh of the adapter */
+    public void toggleHistory() {
+        showHistory = !showHistory;
+    }
+}
@@ -42,7 +42,7 @@ public class ExportOpmlActivity extends AppCompatActivity {
     }
 
     private void export(Uri uri) {
-        AppDatabase.getExecutor().execute(() -> {
+        AppDatabase.getReadExecutor().execute(() -> {
             try {
                 AppDatabase db = AppDatabase.getInstance(this);
                 List<PodcastMetadata> podcasts = db.podcastMetadataDao().getAll();
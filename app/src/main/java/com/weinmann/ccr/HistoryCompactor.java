@@ -0,0 +1,87 @@
+package com.weinmann.ccr;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.DbExecutors;
+import com.weinmann.ccr.db.EpisodeMetadataDao;
+import com.weinmann.ccr.records.EpisodeHistory;
+import com.weinmann.ccr.records.EpisodeMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Folds inactive history older than HISTORY_DETAIL_DAYS into episode_history, which keeps
+ * only what is needed to avoid re-downloading, then hands the freed pages back to the OS.
+ */
+@SuppressWarnings("ClassCanBeRecord")
+public class HistoryCompactor {
+    private static final String TAG = "HistoryCompactor";
+
+    // Younger history stays in episode_metadata so the history view can still show it
+    private static final long HISTORY_DETAIL_DAYS = 90;
+    // Stay well below SQLite's limit on bound variables per statement
+    private static final int DELETE_BATCH_SIZE = 500;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private final Context context;
+
+    public HistoryCompactor(Context context) {
+        this.context = context;
+    }
+
+    public void compact() {
+        AppDatabase.executeWrite(DbExecutors.PRIORITY_BULK, () -> {
+            AppDatabase db = AppDatabase.getInstance(context);
+            EpisodeMetadataDao dao = db.episodeMetadataDao();
+            long cutoffMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(HISTORY_DETAIL_DAYS);
+
+            int compacted = db.runInTransaction(() -> {
+                List<EpisodeMetadata> episodes = dao.getCompactableHistory(cutoffMillis);
+                List<EpisodeHistory> history = new ArrayList<>(episodes.size());
+                List<Long> ids = new ArrayList<>(episodes.size());
+                for (EpisodeMetadata episode : episodes) {
+                    history.add(new EpisodeHistory(episode.urlHash(), episode.podcastId()));
+                    ids.add(episode.id());
+                }
+
+                db.episodeHistoryDao().insertAll(history);
+                for (int i = 0; i < ids.size(); i += DELETE_BATCH_SIZE) {
+                    dao.deleteByIds(ids.subList(i, Math.min(i + DELETE_BATCH_SIZE, ids.size())));
+                }
+                return ids.size();
+            });
+
+            Log.d(TAG, "Compacted " + compacted + " history episodes");
+            if (compacted > 0) {
+                vacuum(db.getOpenHelper().getWritableDatabase());
+            }
+        });
+    }
+
+    /* The first run switches the file to incremental auto-vacuum, which needs one full VACUUM */
+    private static void vacuum(SupportSQLiteDatabase sqlite) {
+        int autoVacuum;
+        try (Cursor cursor = sqlite.query("PRAGMA auto_vacuum")) {
+            autoVacuum = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+
+        if (autoVacuum != AUTO_VACUUM_INCREMENTAL) {
+            sqlite.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            sqlite.execSQL("VACUUM");
+            return;
+        }
+
+        try (Cursor cursor = sqlite.query("PRAGMA incremental_vacuum")) {
+            while (cursor.moveToNext()) {
+                // Each step frees one page
+            }
+        }
+    }
+}
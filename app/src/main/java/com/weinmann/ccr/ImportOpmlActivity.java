@@ -13,13 +13,17 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.DbExecutors;
 import com.weinmann.ccr.records.PodcastMetadata;
 
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ImportOpmlActivity extends AppCompatActivity {
     private static final String TAG = "ImportOpmlActivity";
+    private static final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
 
     private ActivityResultLauncher<String[]> openOpmlLauncher;
 
@@ -54,46 +58,49 @@ public class ImportOpmlActivity extends AppCompatActivity {
                 Intent.FLAG_GRANT_READ_URI_PERMISSION
         );
 
+        CheckBox checkboxDeleteExisting = findViewById(R.id.checkboxDeleteExisting);
+        boolean shouldDeleteFirst = checkboxDeleteExisting.isChecked();
 
-        AppDatabase.getExecutor().execute(() -> {
-
+        // Parse off the writer, so only the inserts hold it
+        ioExecutor.execute(() -> {
+            List<PodcastMetadata> podcasts;
             try (InputStream is = getContentResolver().openInputStream(uri)) {
+                podcasts = OpmlImporter.read(is);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to import OPML", e);
+                showToast("Failed to import OPML");
+                return;
+            }
 
-                List<PodcastMetadata> podcasts = OpmlImporter.read(is);
+            AppDatabase.executeWrite(DbExecutors.PRIORITY_BULK, () -> {
                 AppDatabase db = AppDatabase.getInstance(this);
-
-                CheckBox checkboxDeleteExisting = findViewById(R.id.checkboxDeleteExisting);
-                boolean shouldDeleteFirst = checkboxDeleteExisting.isChecked();
-                if (shouldDeleteFirst) {
-                    db.podcastMetadataDao().deleteAll();
-                }
-
-                List<PodcastMetadata> existing = db.podcastMetadataDao().getAll();
-
-                for (PodcastMetadata podcast : podcasts) {
-                    boolean exists = existing.stream().anyMatch(f -> f.url().equals(podcast.url()));
-                    if (!exists) {
-                        db.podcastMetadataDao().insert(podcast);
-                    }
+                try {
+                    db.runInTransaction(() -> {
+                        if (shouldDeleteFirst) {
+                            db.podcastMetadataDao().deleteAll();
+                        }
+
+                        // The url index is unique, so the IGNORE insert skips podcasts already subscribed to
+                        for (PodcastMetadata podcast : podcasts) {
+                            db.podcastMetadataDao().insert(podcast);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to import OPML", e);
+                    showToast("Failed to import OPML");
+                    return;
                 }
 
-                runOnUiThread(() -> Toast.makeText(
-                        ImportOpmlActivity.this,
-                        "Imported " + podcasts.size() + " podcasts",
-                        Toast.LENGTH_LONG
-                ).show());
-
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to import OPML", e);
-
-                runOnUiThread(() ->
-                        Toast.makeText(
-                                ImportOpmlActivity.this,
-                                "Failed to import OPML",
-                                Toast.LENGTH_LONG
-                        ).show()
-                );
-            }
+                showToast("Imported " + podcasts.size() + " podcasts");
+            });
         });
     }
+
+    private void showToast(String message) {
+        runOnUiThread(() -> Toast.makeText(
+                ImportOpmlActivity.this,
+                message,
+                Toast.LENGTH_LONG
+        ).show());
+    }
 }
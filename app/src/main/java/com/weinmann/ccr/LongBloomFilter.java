@@ -0,0 +1,40 @@
+package com.weinmann.ccr;
+
+/*
+ * Bloom filter over 64-bit keys that are already well-mixed hashes (see Util.hashUrl).
+ * mightContain() never returns false for a key that was put(); false positives occur at
+ * roughly the rate asked for when no more than expectedKeys keys are added. Not thread safe.
+ */
+public class LongBloomFilter {
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    public LongBloomFilter(int expectedKeys, double falsePositiveRate) {
+        int keys = Math.max(expectedKeys, 1);
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (ln2 * ln2));
+        bitCount = (int) Math.min(Math.max(optimalBits, 64), Integer.MAX_VALUE - 63);
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / keys * ln2));
+        bits = new long[(bitCount + 63) / 64];
+    }
+
+    public void put(long key) {
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32);
+        for (int i = 0; i < hashCount; ++i) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long key) {
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32);
+        for (int i = 0; i < hashCount; ++i) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+}
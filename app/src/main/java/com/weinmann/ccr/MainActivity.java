@@ -1,8 +1,11 @@
 package com.weinmann.ccr;
 
 import com.weinmann.ccr.records.*;
+import com.weinmann.ccr.services.DownloadService;
 import com.weinmann.ccr.services.IMediaPlayerService;
 import com.weinmann.ccr.services.MediaPlayerService;
+import com.weinmann.ccr.services.PlaybackStartupTracer;
+import com.weinmann.ccr.services.PlaybackState;
 
 import android.Manifest;
 import android.content.ComponentName;
@@ -12,9 +15,7 @@ import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.IBinder;
-import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.ImageButton;
@@ -35,8 +36,6 @@ public class MainActivity extends AppCompatActivity {
     public static final int NOTIFICATION_PERMISSION_REQUEST_CODE = 1001;
     private static final int AUDIO_PERMISSION_REQUEST_CODE = 1002;
 
-    private final Handler handler = new Handler(Looper.getMainLooper());
-
     private ImageButton btnPlayPause;
     private ImageButton btnPrevious;
     private ImageButton btnRewind;
@@ -52,17 +51,34 @@ public class MainActivity extends AppCompatActivity {
 
     private IMediaPlayerService mediaPlayerService;
     private boolean isServiceBound = false;
-    private Runnable updateTimeRunnable;
+    private boolean isStarted = false;
     private boolean isUserSeeking = false;
 
+    // What the views show now, so an update only touches what changed
+    private PlaybackState renderedState;
+    private int renderedDuration = -1;
+
+    private final IMediaPlayerService.PlaybackListener playbackListener = new IMediaPlayerService.PlaybackListener() {
+        @Override
+        public void onStateChanged(@NonNull PlaybackState state) {
+            renderState(state);
+        }
+
+        @Override
+        public void onPositionChanged(int position, int duration) {
+            renderPosition(position, duration);
+        }
+    };
+
     private final ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
             MediaPlayerService.LocalBinder binder = (MediaPlayerService.LocalBinder) service;
             mediaPlayerService = binder.getService();
             isServiceBound = true;
-            updateUI();
-            startTimeUpdate();
+            if (isStarted) {
+                mediaPlayerService.addPlaybackListener(playbackListener);
+            }
         }
 
         @Override
@@ -114,7 +130,8 @@ public class MainActivity extends AppCompatActivity {
     private void startMediaService() {
         // Start and bind to the service
         Intent serviceIntent = new Intent(this, MediaPlayerService.class);
-        startForegroundService(serviceIntent);
+        // MediaSessionService goes to the foreground by itself once playback starts
+        startService(serviceIntent);
         bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
     }
 
@@ -136,40 +153,31 @@ public class MainActivity extends AppCompatActivity {
     private void setupClickListeners() {
         btnPlayPause.setOnClickListener(v -> {
             if (isServiceBound && mediaPlayerService != null) {
-                mediaPlayerService.playPause(!mediaPlayerService.isPlaying());
-                updateUI();
+                mediaPlayerService.togglePlayPause();
             }
         });
 
         btnPrevious.setOnClickListener(v -> {
             if (isServiceBound && mediaPlayerService != null) {
-                mediaPlayerService.setEpisodeIndex(
-                        mediaPlayerService.getCurrentEpisodeIndex() - 1,
-                        mediaPlayerService.isPlaying());
-                updateUI();
+                mediaPlayerService.skipToPrevious();
             }
         });
 
         btnRewind.setOnClickListener(v -> {
             if (isServiceBound && mediaPlayerService != null) {
                 mediaPlayerService.seekBackward();
-                updateUI();
             }
         });
 
         btnForward.setOnClickListener(v -> {
             if (isServiceBound && mediaPlayerService != null) {
                 mediaPlayerService.seekForward();
-                updateUI();
             }
         });
 
         btnNext.setOnClickListener(v -> {
             if (isServiceBound && mediaPlayerService != null) {
-                mediaPlayerService.setEpisodeIndex(
-                        mediaPlayerService.getCurrentEpisodeIndex() + 1,
-                        mediaPlayerService.isPlaying());
-                updateUI();
+                mediaPlayerService.skipToNext();
             }
         });
 
@@ -178,7 +186,7 @@ public class MainActivity extends AppCompatActivity {
             public void onProgressChanged(SeekBar seekBar, int currentPosition, boolean fromUser) {
                 if (fromUser && isServiceBound && mediaPlayerService != null) {
                     // Update time display while seeking
-                    updateProgress(currentPosition);
+                    tvPosition.setText(Util.formatTime(currentPosition));
                 }
             }
 
@@ -197,16 +205,9 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
-    private void updateProgress(long progress) {
-        String position = Util.formatTime(progress);
-        String duration = Util.formatTime(mediaPlayerService.getDuration());
-        tvPosition.setText(position);
-        tvDuration.setText(duration);
-    }
-
-    private void updateUI() {
-        if (isServiceBound && mediaPlayerService != null) {
-            EpisodeMetadata currentEpisode = mediaPlayerService.getCurrentEpisode();
+    private void renderState(@NonNull PlaybackState state) {
+        if (renderedState == null || !renderedState.sameEpisodeAs(state)) {
+            EpisodeSummary currentEpisode = state.episode();
             if (currentEpisode == null) {
                 tvPodcast.setText("");
                 tvPubDate.setText(R.string.no_episodes_text);
@@ -217,61 +218,64 @@ public class MainActivity extends AppCompatActivity {
                 tvPubDate.setText("Published " + currentEpisode.getPubDateString());
                 tvTitle.setText(currentEpisode.title());
                 String episodeNumber = String.format(Locale.getDefault(), "%d/%d",
-                        mediaPlayerService.getCurrentEpisodeIndex() + 1,
-                        mediaPlayerService.getEpisodeCount());
+                        state.episodeIndex() + 1,
+                        state.episodeCount());
                 tvEpisodeNumber.setText(episodeNumber);
             }
-            if (mediaPlayerService.isPlaying()) {
+        }
+
+        if (renderedState == null || renderedState.isPlaying() != state.isPlaying()) {
+            if (state.isPlaying()) {
                 btnPlayPause.setImageResource(R.drawable.player_102_pause);
             } else {
                 btnPlayPause.setImageResource(R.drawable.player_102_play);
             }
         }
+        renderedState = state;
     }
 
-    private void startTimeUpdate() {
-        updateTimeRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (isServiceBound && mediaPlayerService != null) {
-                    long currentPosition = mediaPlayerService.getCurrentPosition();
-                    long duration = mediaPlayerService.getDuration();
+    private void renderPosition(int position, int duration) {
+        if (duration != renderedDuration) {
+            tvDuration.setText(Util.formatTime(duration));
+            seekBar.setMax(duration);
+            renderedDuration = duration;
+        }
+
+        // Leave the seekbar and time to the user while they drag
+        if (!isUserSeeking) {
+            seekBar.setProgress(position);
+            tvPosition.setText(Util.formatTime(position));
+        }
+    }
 
-                    // Update seekbar max and progress (only if user is not seeking)
-                    if (!isUserSeeking) {
-                        seekBar.setMax((int)duration);
-                        seekBar.setProgress((int)currentPosition);
-                    }
+    @Override
+    protected void onStart() {
+        super.onStart();
+        isStarted = true;
+        DownloadService.resumeIfInterrupted(this);
+        if (isServiceBound && mediaPlayerService != null) {
+            mediaPlayerService.addPlaybackListener(playbackListener);
+        }
+    }
 
-                    updateProgress(currentPosition);
-                    updateUI();
-                }
-                handler.postDelayed(this, 1000);
-            }
-        };
-        handler.post(updateTimeRunnable);
+    @Override
+    protected void onStop() {
+        super.onStop();
+        isStarted = false;
+        if (isServiceBound && mediaPlayerService != null) {
+            mediaPlayerService.removePlaybackListener(playbackListener);
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (updateTimeRunnable != null) {
-            handler.removeCallbacks(updateTimeRunnable);
-        }
         if (isServiceBound) {
             unbindService(serviceConnection);
             isServiceBound = false;
         }
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-        if (isServiceBound && mediaPlayerService != null) {
-            updateUI();
-        }
-    }
-
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
                                            @NonNull int[] grantResults) {
@@ -312,6 +316,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
+        DebugMenu.addItems(this, menu);
         return true;
     }
 
@@ -332,6 +337,11 @@ public class MainActivity extends AppCompatActivity {
         } else if (item.getItemId() == R.id.action_import_opml) {
             startActivity(new Intent(this, ImportOpmlActivity.class));
             return true;
+        } else if (item.getItemId() == R.id.action_startup_timings) {
+            showStartupTimings();
+            return true;
+        } else if (DebugMenu.onItemSelected(this, item)) {
+            return true;
         } else if (item.getItemId() == R.id.action_exit) {
             exitApp();
             return true;
@@ -339,6 +349,20 @@ public class MainActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    private void showStartupTimings() {
+        PlaybackStartupTracer tracer = PlaybackStartupTracer.getInstance(this);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.playback_startup_timings)
+                .setMessage(tracer.formatSummary())
+                .setPositiveButton(R.string.export, (dialog, which) -> tracer.export(this, file -> Toast.makeText(
+                        this,
+                        file == null ? "Export failed" : "Timings written to " + file.getName(),
+                        Toast.LENGTH_LONG
+                ).show()))
+                .setNegativeButton(R.string.close, null)
+                .show();
+    }
+
     private void exitApp() {
         // Stop the service
         Intent serviceIntent = new Intent(this, MediaPlayerService.class);
@@ -0,0 +1,346 @@
+package com.weinmann.ccr;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/*
+ * Frame-accurate seek table for an MP3 file, built from the frame headers while the file
+ * downloads and stored next to it. Entry i is the frame playing at i seconds, so finding
+ * the frame for a seek is an array lookup rather than a scan or a bitrate guess.
+ */
+public final class Mp3SeekIndex {
+    private static final String TAG = "Mp3SeekIndex";
+    public static final String FILE_SUFFIX = ".seekidx";
+    public static final long INTERVAL_US = 1_000_000L;
+    public static final long NOT_INDEXED = -1L;
+
+    private static final int MAGIC = 0x43435358; // "CCSX"
+    private static final int FORMAT_VERSION = 1;
+
+    private final long audioFileLength;
+    private final long durationUs;
+    private final long[] timesUs;
+    private final long[] positions;
+
+    private Mp3SeekIndex(long audioFileLength, long durationUs, @NonNull long[] timesUs, @NonNull long[] positions) {
+        this.audioFileLength = audioFileLength;
+        this.durationUs = durationUs;
+        this.timesUs = timesUs;
+        this.positions = positions;
+    }
+
+    @NonNull
+    public static File fileFor(@NonNull String audioAbsolutePath) {
+        return new File(audioAbsolutePath + FILE_SUFFIX);
+    }
+
+    public long getDurationUs() {
+        return durationUs;
+    }
+
+    public int size() {
+        return positions.length;
+    }
+
+    /* The entry for the frame playing at timeUs; its start time is never after timeUs */
+    public int indexFor(long timeUs) {
+        long i = Math.max(timeUs, 0) / INTERVAL_US;
+        return (int) Math.min(i, positions.length - 1);
+    }
+
+    public long getTimeUs(int index) {
+        return timesUs[index];
+    }
+
+    public long getPosition(int index) {
+        return positions[index];
+    }
+
+    /* Exact start time of the indexed frame at this byte offset, or NOT_INDEXED */
+    public long getTimeUsAtPosition(long position) {
+        int i = Arrays.binarySearch(positions, position);
+        return i >= 0 ? timesUs[i] : NOT_INDEXED;
+    }
+
+    public void writeTo(@NonNull File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(audioFileLength);
+            out.writeLong(durationUs);
+            out.writeInt(positions.length);
+            for (int i = 0; i < positions.length; ++i) {
+                out.writeLong(timesUs[i]);
+                out.writeLong(positions[i]);
+            }
+        }
+    }
+
+    /* Null when there is no index, it is unreadable, or it was built for a different file */
+    @Nullable
+    public static Mp3SeekIndex read(@NonNull File audioFile) {
+        File file = fileFor(audioFile.getAbsolutePath());
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+
+            long audioFileLength = in.readLong();
+            if (audioFileLength != audioFile.length()) return null;
+
+            long durationUs = in.readLong();
+            int count = in.readInt();
+            if (count <= 0) return null;
+
+            long[] timesUs = new long[count];
+            long[] positions = new long[count];
+            for (int i = 0; i < count; ++i) {
+                timesUs[i] = in.readLong();
+                positions[i] = in.readLong();
+            }
+            return new Mp3SeekIndex(audioFileLength, durationUs, timesUs, positions);
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring unreadable seek index " + file, e);
+            return null;
+        }
+    }
+
+    /*
+     * Passes the download through to the file while parsing MPEG audio frame headers.
+     * Skips a leading ID3v2 tag and a Xing/Info/VBRI first frame, as Mp3Extractor does,
+     * so the times here line up with the player's. Resyncs byte by byte on garbage.
+     */
+    public static class Builder extends FilterOutputStream {
+        private static final int ID3_HEADER_LENGTH = 10;
+        private static final int[] BITRATES_V1_L3 =
+                {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+        private static final int[] BITRATES_V2_L3 =
+                {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+        private static final int[] SAMPLE_RATES_V1 = {44100, 48000, 32000};
+
+        private static final int STATE_ID3 = 0;
+        private static final int STATE_HEADER = 1;
+        private static final int STATE_FIRST_FRAME = 2;
+        private static final int STATE_SKIP = 3;
+
+        private int state = STATE_ID3;
+        private long position = 0;
+        private long skipUntil = 0;
+
+        private final byte[] id3Header = new byte[ID3_HEADER_LENGTH];
+        private int header;
+        private int headerBytes;
+
+        private byte[] firstFrame;
+        private int firstFrameBytes;
+        private long firstFramePosition;
+        private int firstFrameSamples;
+
+        private int sampleRate;
+        private long totalSamples;
+        private long nextEntryTimeUs;
+        private long[] timesUs = new long[1024];
+        private long[] positions = new long[1024];
+        private int count;
+
+        public Builder(@NonNull OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            consume(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            consume(b, off, len);
+        }
+
+        /* Null if no MPEG audio frames were found */
+        @Nullable
+        public Mp3SeekIndex build() {
+            if (count == 0 || sampleRate == 0) return null;
+
+            long durationUs = totalSamples * 1_000_000L / sampleRate;
+            return new Mp3SeekIndex(position, durationUs,
+                    Arrays.copyOf(timesUs, count), Arrays.copyOf(positions, count));
+        }
+
+        private void consume(@NonNull byte[] b, int off, int len) {
+            int end = off + len;
+            while (off < end) {
+                if (state == STATE_SKIP) {
+                    int skip = (int) Math.max(0, Math.min(skipUntil - position, end - off));
+                    off += skip;
+                    position += skip;
+                    if (position >= skipUntil) state = STATE_HEADER;
+                    continue;
+                }
+
+                onByte(b[off++]);
+                ++position;
+            }
+        }
+
+        /* Handles the byte at position */
+        private void onByte(byte value) {
+            switch (state) {
+                case STATE_ID3 -> onId3Byte(value);
+                case STATE_HEADER -> onHeaderByte(value);
+                case STATE_FIRST_FRAME -> onFirstFrameByte(value);
+                case STATE_SKIP -> {
+                    if (position + 1 >= skipUntil) state = STATE_HEADER;
+                }
+            }
+        }
+
+        private void onId3Byte(byte value) {
+            id3Header[(int) position] = value;
+            if (position + 1 < ID3_HEADER_LENGTH) return;
+
+            if (id3Header[0] == 'I' && id3Header[1] == 'D' && id3Header[2] == '3') {
+                int size = (id3Header[6] & 0x7F) << 21 | (id3Header[7] & 0x7F) << 14 |
+                        (id3Header[8] & 0x7F) << 7 | (id3Header[9] & 0x7F);
+                boolean hasFooter = (id3Header[5] & 0x10) != 0;
+                skipUntil = ID3_HEADER_LENGTH + size + (hasFooter ? ID3_HEADER_LENGTH : 0);
+                state = STATE_SKIP;
+                return;
+            }
+
+            // No tag: look for frames in the bytes held back so far
+            long current = position;
+            state = STATE_HEADER;
+            for (int i = 0; i < ID3_HEADER_LENGTH; ++i) {
+                position = i;
+                onByte(id3Header[i]);
+            }
+            position = current;
+        }
+
+        private void onHeaderByte(byte value) {
+            header = header << 8 | (value & 0xFF);
+            if (++headerBytes < 4) return;
+
+            long frameStart = position - 3;
+            int frameSize = frameSize(header);
+            // A sample rate change mid-stream is far more likely a false sync than real
+            if (frameSize <= 0 || (sampleRate != 0 && sampleRate(header) != sampleRate)) {
+                headerBytes = 3; // slide by one byte and try again
+                return;
+            }
+
+            headerBytes = 0;
+            int frameSamples = isMpeg1(header) ? 1152 : 576;
+            if (sampleRate == 0) {
+                sampleRate = sampleRate(header);
+                firstFrame = new byte[frameSize];
+                firstFrame[0] = (byte) (header >>> 24);
+                firstFrame[1] = (byte) (header >>> 16);
+                firstFrame[2] = (byte) (header >>> 8);
+                firstFrame[3] = (byte) header;
+                firstFrameBytes = 4;
+                firstFrameSamples = frameSamples;
+                firstFramePosition = frameStart;
+                state = STATE_FIRST_FRAME;
+                return;
+            }
+
+            addFrame(frameStart, frameSamples);
+            skipUntil = frameStart + frameSize;
+            state = STATE_SKIP;
+        }
+
+        private void onFirstFrameByte(byte value) {
+            firstFrame[firstFrameBytes++] = value;
+            if (firstFrameBytes < firstFrame.length) return;
+
+            // An info frame carries no audio; Mp3Extractor starts its clock at the next frame
+            if (!isInfoFrame(firstFrame)) {
+                addFrame(firstFramePosition, firstFrameSamples);
+            }
+            firstFrame = null;
+            state = STATE_HEADER;
+        }
+
+        private void addFrame(long frameStart, int frameSamples) {
+            long startUs = totalSamples * 1_000_000L / sampleRate;
+            totalSamples += frameSamples;
+            long endUs = totalSamples * 1_000_000L / sampleRate;
+
+            while (nextEntryTimeUs < endUs) {
+                if (count == positions.length) {
+                    timesUs = Arrays.copyOf(timesUs, count * 2);
+                    positions = Arrays.copyOf(positions, count * 2);
+                }
+                timesUs[count] = startUs;
+                positions[count] = frameStart;
+                ++count;
+                nextEntryTimeUs += INTERVAL_US;
+            }
+        }
+
+        private static boolean isInfoFrame(@NonNull byte[] frame) {
+            int header = (frame[0] & 0xFF) << 24 | (frame[1] & 0xFF) << 16 | (frame[2] & 0xFF) << 8 | (frame[3] & 0xFF);
+            boolean isMono = ((header >>> 6) & 3) == 3;
+            int sideInfoLength = isMpeg1(header) ? (isMono ? 17 : 32) : (isMono ? 9 : 17);
+            return hasTag(frame, 4 + sideInfoLength, "Xing")
+                    || hasTag(frame, 4 + sideInfoLength, "Info")
+                    || hasTag(frame, 36, "VBRI");
+        }
+
+        private static boolean hasTag(@NonNull byte[] frame, int offset, @NonNull String tag) {
+            if (offset + tag.length() > frame.length) return false;
+            for (int i = 0; i < tag.length(); ++i) {
+                if (frame[offset + i] != tag.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        private static boolean isMpeg1(int header) {
+            return ((header >>> 19) & 3) == 3;
+        }
+
+        private static int sampleRate(int header) {
+            int rate = SAMPLE_RATES_V1[(header >>> 10) & 3];
+            return switch ((header >>> 19) & 3) {
+                case 3 -> rate;
+                case 2 -> rate / 2;
+                default -> rate / 4;
+            };
+        }
+
+        /* Bytes in the Layer III frame this header starts, or 0 if it isn't a valid one */
+        private static int frameSize(int header) {
+            boolean isSync = (header & 0xFFE00000) == 0xFFE00000;
+            int version = (header >>> 19) & 3;
+            int layer = (header >>> 17) & 3;
+            int bitrateIndex = (header >>> 12) & 0xF;
+            int sampleRateIndex = (header >>> 10) & 3;
+            if (!isSync || version == 1 || layer != 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+                return 0;
+            }
+
+            boolean isMpeg1 = version == 3;
+            int bitrate = (isMpeg1 ? BITRATES_V1_L3 : BITRATES_V2_L3)[bitrateIndex] * 1000;
+            int padding = (header >>> 9) & 1;
+            return (isMpeg1 ? 144 : 72) * bitrate / sampleRate(header) + padding;
+        }
+    }
+}
@@ -96,7 +96,7 @@ public class PodcastSearchActivity extends AppCompatActivity {
     }
 
     private void savePodcast(String title, String podcastUrl) {
-        AppDatabase.getExecutor().execute(() -> {
+        AppDatabase.getWriteExecutor().execute(() -> {
             PodcastMetadata podcast = new PodcastMetadata(
                     0L,
                     title,
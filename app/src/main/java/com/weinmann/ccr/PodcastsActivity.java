@@ -7,9 +7,11 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -18,6 +20,7 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.records.PodcastListing;
 import com.weinmann.ccr.records.PodcastMetadata;
 
 import java.util.ArrayList;
@@ -25,10 +28,10 @@ import java.util.List;
 
 public class PodcastsActivity extends AppCompatActivity {
 
-    private final List<PodcastMetadata> podcasts = new ArrayList<>();
+    private final List<PodcastListing> podcasts = new ArrayList<>();
     private final EpisodeDeleter episodeDeleter = new EpisodeDeleter(this);
 
-    private ArrayAdapter<PodcastMetadata> adapter;
+    private ArrayAdapter<PodcastListing> adapter;
 
     private final ActivityResultLauncher<Intent> editPodcastLauncher =
             registerForActivityResult(
@@ -62,7 +65,7 @@ public class PodcastsActivity extends AppCompatActivity {
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         if (item.getItemId() == R.id.action_reset_to_demos) {
-            AppDatabase.getExecutor().execute(() -> {
+            AppDatabase.getWriteExecutor().execute(() -> {
                 AppDatabase db = AppDatabase.getInstance(this);
                 db.podcastMetadataDao().deleteAll();
 
@@ -93,7 +96,7 @@ public class PodcastsActivity extends AppCompatActivity {
             editPodcastLauncher.launch(new Intent(this, EditPodcastActivity.class));
             return true;
         } else if (item.getItemId() == R.id.action_delete_all_podcasts) {
-            AppDatabase.getExecutor().execute(() -> {
+            AppDatabase.getWriteExecutor().execute(() -> {
                 AppDatabase db = AppDatabase.getInstance(this);
                 db.podcastMetadataDao().deleteAll();
 
@@ -121,7 +124,7 @@ public class PodcastsActivity extends AppCompatActivity {
 
         AdapterView.AdapterContextMenuInfo info =
                 (AdapterView.AdapterContextMenuInfo) menuInfo;
-        PodcastMetadata podcast = podcasts.get(info.position);
+        PodcastMetadata podcast = podcasts.get(info.position).podcast();
 
         // Update menu text depending on podcast state
         MenuItem disableItem = menu.findItem(R.id.menu_toggle_enable_podcast);
@@ -135,7 +138,7 @@ public class PodcastsActivity extends AppCompatActivity {
                 (AdapterView.AdapterContextMenuInfo) item.getMenuInfo();
 
         if (info != null) {
-            PodcastMetadata podcast = podcasts.get(info.position);
+            PodcastMetadata podcast = podcasts.get(info.position).podcast();
 
             if (item.getItemId() == R.id.menu_toggle_enable_podcast) {
                 toggleEnablePodcast(podcast);
@@ -160,7 +163,16 @@ public class PodcastsActivity extends AppCompatActivity {
 
     private void initViews() {
         ListView lvPodcasts = findViewById(R.id.podcastList);
-        adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, podcasts);
+        adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_2, android.R.id.text1, podcasts) {
+            @NonNull
+            @Override
+            public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+                View view = super.getView(position, convertView, parent);
+                TextView statsView = view.findViewById(android.R.id.text2);
+                statsView.setText(getItem(position).getStatsLine(getContext()));
+                return view;
+            }
+        };
         lvPodcasts.setAdapter(adapter);
 
         // enable long-press context menu ⬅️
@@ -168,9 +180,10 @@ public class PodcastsActivity extends AppCompatActivity {
     }
     
     private void refreshViews() {
-        AppDatabase.getExecutor().execute(() -> {
+        AppDatabase.getReadExecutor().execute(() -> {
             AppDatabase db = AppDatabase.getInstance(this);
-            List<PodcastMetadata> newPodcasts = db.podcastMetadataDao().getAll();
+            // Stats come from podcast_stats, so this stays one row per podcast however many episodes exist
+            List<PodcastListing> newPodcasts = db.podcastStatsDao().getAllListings();
             runOnUiThread(() -> {
                 podcasts.clear();
                 podcasts.addAll(newPodcasts);
@@ -181,7 +194,7 @@ public class PodcastsActivity extends AppCompatActivity {
 
     // DB ACTION: DISABLE
     private void toggleEnablePodcast(PodcastMetadata podcast) {
-        AppDatabase.getExecutor().execute(() -> {
+        AppDatabase.getWriteExecutor().execute(() -> {
             AppDatabase db = AppDatabase.getInstance(this);
 
             PodcastMetadata updated = new PodcastMetadata(
@@ -211,11 +224,11 @@ public class PodcastsActivity extends AppCompatActivity {
     }
 
     private void deleteEpisodes(PodcastMetadata podcast) {
-        episodeDeleter.deleteEpisodes(e -> e.podcastId() == podcast.id());
+        episodeDeleter.deleteEpisodes(EpisodeDeleter.Criteria.forPodcast(podcast.id()));
     }
 
     private void deletePodcast(PodcastMetadata podcast) {
-        AppDatabase.getExecutor().execute(() -> {
+        AppDatabase.getWriteExecutor().execute(() -> {
             AppDatabase db = AppDatabase.getInstance(this);
             db.podcastMetadataDao().delete(podcast);
 
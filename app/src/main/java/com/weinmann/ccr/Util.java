@@ -1,10 +1,23 @@
 package com.weinmann.ccr;
 
 import android.net.Uri;
+import android.text.Html;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.Locale;
+import java.util.function.BiPredicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class Util {
 
@@ -16,6 +29,43 @@ public class Util {
         return String.format(Locale.US,"%02d:%02d", minutes, seconds);
     }
 
+    /* Like Transformations.distinctUntilChanged, but with a caller-supplied notion of "same" per item */
+    @NonNull
+    public static <T> LiveData<List<T>> distinctListUntilChanged(@NonNull LiveData<List<T>> source,
+                                                                 @NonNull BiPredicate<T, T> isSame) {
+        MediatorLiveData<List<T>> result = new MediatorLiveData<>();
+        result.addSource(source, newList -> {
+            List<T> oldList = result.getValue();
+            if (oldList == null || !isSameList(oldList, newList, isSame)) {
+                result.setValue(newList);
+            }
+        });
+        return result;
+    }
+
+    private static <T> boolean isSameList(List<T> a, List<T> b, BiPredicate<T, T> isSame) {
+        if (a.size() != b.size()) return false;
+
+        for (int i = 0; i < a.size(); ++i) {
+            if (!isSame.test(a.get(i), b.get(i))) return false;
+        }
+        return true;
+    }
+
+    /* Turns free text into an FTS4 query: every word must match, each as a prefix */
+    @NonNull
+    public static String toFtsQuery(@NonNull String text) {
+        StringBuilder query = new StringBuilder();
+        for (String word : text.split("\\s+")) {
+            String cleaned = word.replaceAll("[^\\p{L}\\p{N}]", "");
+            if (cleaned.isEmpty()) continue;
+
+            if (query.length() > 0) query.append(' ');
+            query.append(cleaned).append('*');
+        }
+        return query.toString();
+    }
+
     @NonNull
     public static String normalizeUrl(String url) {
         Uri uri = Uri.parse(url).normalizeScheme();
@@ -25,4 +75,66 @@ public class Util {
                 .build()
                 .toString();
     }
+
+    /* Feed descriptions are usually HTML; tags and entities are only noise for display and search */
+    @NonNull
+    public static String htmlToPlainText(@Nullable String html) {
+        if (html == null || html.isEmpty()) return "";
+
+        String text = Html.fromHtml(html, Html.FROM_HTML_MODE_LEGACY).toString();
+        return text.replaceAll("\\s+", " ").trim();
+    }
+
+    @NonNull
+    public static byte[] compressText(@NonNull String text) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @NonNull
+    public static String decompressText(@Nullable byte[] compressed) {
+        if (compressed == null || compressed.length == 0) return "";
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            return "";
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /* First 64 bits of SHA-256; stable across releases because it is stored in episode_history */
+    public static long hashUrl(@NonNull String normalizedUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalizedUrl.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; ++i) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 }
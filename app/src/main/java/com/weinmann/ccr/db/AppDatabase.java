@@ -6,24 +6,33 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 
+import com.weinmann.ccr.records.DownloadJob;
+import com.weinmann.ccr.records.EpisodeDescription;
+import com.weinmann.ccr.records.EpisodeFts;
+import com.weinmann.ccr.records.EpisodeHistory;
+import com.weinmann.ccr.records.PlaybackCheckpoint;
 import com.weinmann.ccr.records.PodcastMetadata;
+import com.weinmann.ccr.records.PodcastStats;
 import com.weinmann.ccr.records.EpisodeMetadata;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 @Database(
-        entities = {PodcastMetadata.class, EpisodeMetadata.class },
-        version = 1
+        entities = {PodcastMetadata.class, EpisodeMetadata.class, DownloadJob.class, EpisodeFts.class,
+                EpisodeDescription.class, EpisodeHistory.class, PodcastStats.class, PlaybackCheckpoint.class },
+        version = 10
 )
 public abstract class AppDatabase extends RoomDatabase {
 
     private static volatile AppDatabase INSTANCE;
-    private static final ExecutorService databaseWriteExecutor =
-            Executors.newSingleThreadExecutor();
 
     public abstract PodcastMetadataDao podcastMetadataDao();
     public abstract EpisodeMetadataDao episodeMetadataDao();
+    public abstract DownloadJobDao downloadJobDao();
+    public abstract EpisodeDescriptionDao episodeDescriptionDao();
+    public abstract EpisodeHistoryDao episodeHistoryDao();
+    public abstract PodcastStatsDao podcastStatsDao();
+    public abstract PlaybackCheckpointDao playbackCheckpointDao();
 
     public static AppDatabase getInstance(Context context) {
         if (INSTANCE == null) {
@@ -34,8 +43,11 @@ public abstract class AppDatabase extends RoomDatabase {
                                     AppDatabase.class,
                                     "Ccr_database"
                             )
-                            // Explicit migration list (even if empty)
-                            .addMigrations()
+                            .addMigrations(Migrations.ALL)
+                            .addCallback(Triggers.CALLBACK)
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                            // LiveData and paging queries share the reader pool
+                            .setQueryExecutor(DbExecutors.reads())
                             .build();
                 }
             }
@@ -43,7 +55,19 @@ public abstract class AppDatabase extends RoomDatabase {
         return INSTANCE;
     }
 
-    public static ExecutorService getExecutor() {
-        return databaseWriteExecutor;
+    public static Executor getReadExecutor() {
+        return DbExecutors.reads();
+    }
+
+    public static Executor getWriteExecutor() {
+        return DbExecutors.writes();
+    }
+
+    public static void executeWrite(int priority, Runnable command) {
+        DbExecutors.write(priority, command);
+    }
+
+    public static void executeWriteAndWait(int priority, Runnable command) {
+        DbExecutors.writeAndWait(priority, command);
     }
 }
@@ -0,0 +1,115 @@
+package com.weinmann.ccr.db;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Reads run on a small pool (WAL lets them proceed alongside a write). Writes are
+ * serialized on one thread, taken in priority order and FIFO within a priority, so a
+ * playback position save never waits behind an OPML import or a bulk delete.
+ */
+public final class DbExecutors {
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_BULK = 2;
+
+    private static final int READER_THREADS = 4;
+
+    private static final ExecutorService readExecutor =
+            Executors.newFixedThreadPool(READER_THREADS, namedThreadFactory("db-read"));
+
+    private static final ThreadLocal<Boolean> onWriteThread = ThreadLocal.withInitial(() -> false);
+
+    private static final ThreadPoolExecutor writeExecutor = new ThreadPoolExecutor(
+            1, 1,
+            0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(),
+            writeThreadFactory());
+
+    private static final AtomicLong writeSequence = new AtomicLong();
+
+    private static final Executor normalWriteExecutor = command -> write(PRIORITY_NORMAL, command);
+
+    private DbExecutors() {
+    }
+
+    @NonNull
+    public static Executor reads() {
+        return readExecutor;
+    }
+
+    @NonNull
+    public static Executor writes() {
+        return normalWriteExecutor;
+    }
+
+    public static void write(int priority, @NonNull Runnable command) {
+        // execute(), not submit(): the queue needs our Comparable wrapper, not a FutureTask
+        writeExecutor.execute(new PrioritizedWrite(priority, writeSequence.getAndIncrement(), command));
+    }
+
+    /* Like write(), but returns once the command has run, for worker threads that go on to read what they wrote */
+    public static void writeAndWait(int priority, @NonNull Runnable command) {
+        if (onWriteThread.get()) {
+            // Queueing behind ourselves would never return
+            command.run();
+            return;
+        }
+
+        FutureTask<Void> task = new FutureTask<>(command, null);
+        write(priority, task);
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            if (cause instanceof Error error) throw error;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a database write", e);
+        }
+    }
+
+    private record PrioritizedWrite(int priority, long sequence, Runnable command)
+            implements Runnable, Comparable<PrioritizedWrite> {
+        @Override
+        public void run() {
+            command.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedWrite other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    @NonNull
+    private static ThreadFactory writeThreadFactory() {
+        ThreadFactory named = namedThreadFactory("db-write");
+        return runnable -> named.newThread(() -> {
+            onWriteThread.set(true);
+            runnable.run();
+        });
+    }
+
+    @NonNull
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + "-" + count.incrementAndGet());
+    }
+}
@@ -0,0 +1,42 @@
+package com.weinmann.ccr.db;
+
+import androidx.room.*;
+
+import com.weinmann.ccr.records.DownloadJob;
+
+import java.util.List;
+
+@Dao
+public interface DownloadJobDao {
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insert(DownloadJob job);
+
+    @Query("SELECT COUNT(*) FROM download_job WHERE state IN (" +
+            DownloadJob.STATE_QUEUED + ", " + DownloadJob.STATE_RUNNING + ")")
+    int countUnfinished();
+
+    @Query("SELECT targetId FROM download_job WHERE kind = :kind AND state IN (" +
+            DownloadJob.STATE_QUEUED + ", " + DownloadJob.STATE_RUNNING + ") ORDER BY id ASC")
+    List<Long> getUnfinishedTargetIds(int kind);
+
+    @Query("UPDATE download_job SET state = :state, failureReason = :failureReason, updatedMillis = :updatedMillis " +
+            "WHERE kind = :kind AND targetId = :targetId")
+    void updateState(int kind, long targetId, int state, String failureReason, long updatedMillis);
+
+    @Query("UPDATE download_job SET bytesDone = :bytesDone, updatedMillis = :updatedMillis " +
+            "WHERE kind = :kind AND targetId = :targetId")
+    void updateBytesDone(int kind, long targetId, long bytesDone, long updatedMillis);
+
+    @Query("DELETE FROM download_job WHERE state IN (" +
+            DownloadJob.STATE_QUEUED + ", " + DownloadJob.STATE_RUNNING + ")")
+    void deleteUnfinished();
+
+    /* Unfinished episode rows whose episode no longer needs downloading */
+    @Query("DELETE FROM download_job WHERE kind = " + DownloadJob.KIND_EPISODE + " AND state IN (" +
+            DownloadJob.STATE_QUEUED + ", " + DownloadJob.STATE_RUNNING + ") AND targetId NOT IN " +
+            "(SELECT id FROM episode_metadata WHERE " + EpisodeMetadataDao.TO_DOWNLOAD_CRITERIA + ")")
+    void deleteStaleEpisodeJobs();
+
+    @Query("DELETE FROM download_job")
+    void deleteAll();
+}
@@ -0,0 +1,18 @@
+package com.weinmann.ccr.db;
+
+import androidx.room.*;
+
+import com.weinmann.ccr.records.EpisodeDescription;
+import com.weinmann.ccr.records.EpisodeFts;
+
+@Dao
+public interface EpisodeDescriptionDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(EpisodeDescription description);
+
+    @Insert
+    void insertFts(EpisodeFts fts);
+
+    @Query("SELECT compressedText FROM episode_description WHERE episodeId = :episodeId")
+    byte[] getCompressedText(long episodeId);
+}
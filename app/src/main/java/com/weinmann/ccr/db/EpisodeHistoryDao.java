@@ -0,0 +1,25 @@
+package com.weinmann.ccr.db;
+
+import androidx.room.*;
+
+import com.weinmann.ccr.records.EpisodeHistory;
+
+import java.util.List;
+
+@Dao
+public interface EpisodeHistoryDao {
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertAll(List<EpisodeHistory> entries);
+
+    @Query("SELECT EXISTS(SELECT 1 FROM episode_history WHERE urlHash = :urlHash)")
+    boolean contains(long urlHash);
+
+    @Query("SELECT urlHash FROM episode_history")
+    List<Long> getAllUrlHashes();
+
+    @Query("SELECT COUNT(*) FROM episode_history")
+    int count();
+
+    @Query("DELETE FROM episode_history")
+    void deleteAll();
+}
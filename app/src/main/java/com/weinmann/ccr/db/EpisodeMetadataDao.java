@@ -1,9 +1,11 @@
 package com.weinmann.ccr.db;
 
 import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
 import androidx.room.*;
 
 import com.weinmann.ccr.records.EpisodeMetadata;
+import com.weinmann.ccr.records.EpisodeSummary;
 
 import java.util.List;
 
@@ -19,15 +21,65 @@ public interface EpisodeMetadataDao {
     @Query("UPDATE episode_metadata SET useForHistory = 0")
     void clearAllHistory();
 
-    @Query("SELECT * FROM episode_metadata WHERE isActive = 1 ORDER BY audioAbsolutePath ASC")
-    LiveData<List<EpisodeMetadata>> getObservable();
+    @Query("SELECT urlHash FROM episode_metadata")
+    List<Long> getAllUrlHashes();
+
+    /* Inactive history published before the cutoff; see HistoryCompactor */
+    @Query("SELECT * FROM episode_metadata WHERE isActive = 0 AND useForHistory = 1 AND pubDateMillis < :cutoffMillis")
+    List<EpisodeMetadata> getCompactableHistory(long cutoffMillis);
+
+    @Query("DELETE FROM episode_metadata WHERE id IN (:ids)")
+    void deleteByIds(List<Long> ids);
+
+    String SUMMARY_COLUMNS = "id, podcastId, podcastName, title, pubDateMillis, audioAbsolutePath, " +
+            "duration, currentPos, isActive, isListenedTo";
+
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM episode_metadata WHERE isActive = 1 ORDER BY audioAbsolutePath ASC")
+    LiveData<List<EpisodeSummary>> getObservableSummaries();
+
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM episode_metadata WHERE isActive = 1 ORDER BY audioAbsolutePath ASC")
+    PagingSource<Integer, EpisodeSummary> getActivePaged();
+
+    /* Every episode ever seen, newest first */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM episode_metadata ORDER BY pubDateMillis DESC")
+    PagingSource<Integer, EpisodeSummary> getHistoryPaged();
+
+    /*
+     * ftsQuery is FTS4 MATCH syntax (see Util.toFtsQuery). Episodes matching in the title
+     * rank above description-only matches, newest first within each group.
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM episode_metadata " +
+            "WHERE id IN (SELECT docid FROM episode_fts WHERE episode_fts MATCH :ftsQuery) " +
+            "ORDER BY (id IN (SELECT docid FROM episode_fts WHERE title MATCH :ftsQuery)) DESC, " +
+            "pubDateMillis DESC " +
+            "LIMIT :limit")
+    List<EpisodeSummary> search(String ftsQuery, int limit);
 
     @Query("SELECT * FROM episode_metadata WHERE isActive = 1 ORDER BY audioAbsolutePath ASC")
     List<EpisodeMetadata> getActive();
 
-    @Query("SELECT * FROM episode_metadata WHERE isActive = 1 AND contentLength = 0")
+    String TO_DOWNLOAD_CRITERIA = "isActive = 1 AND contentLength = 0";
+
+    @Query("SELECT * FROM episode_metadata WHERE " + TO_DOWNLOAD_CRITERIA)
     List<EpisodeMetadata> getToDownload();
 
     @Update
     void update(EpisodeMetadata entity);
+
+    /* Zero / Long.MAX_VALUE arguments disable that filter; see EpisodeDeleter.Criteria */
+    String DELETE_CRITERIA = "isActive = 1" +
+            " AND (:onlyListenedTo = 0 OR isListenedTo = 1)" +
+            " AND (:podcastId = 0 OR podcastId = :podcastId)" +
+            " AND (:episodeId = 0 OR id = :episodeId)" +
+            " AND pubDateMillis < :publishedBeforeMillis";
+
+    @Query("SELECT audioAbsolutePath FROM episode_metadata WHERE " + DELETE_CRITERIA)
+    List<String> getAudioPathsToDelete(boolean onlyListenedTo, long podcastId, long episodeId, long publishedBeforeMillis);
+
+    @Query("UPDATE episode_metadata SET isActive = 0, currentPos = 0, useForHistory = 1 WHERE " + DELETE_CRITERIA)
+    void deactivate(boolean onlyListenedTo, long podcastId, long episodeId, long publishedBeforeMillis);
+
+    /* Positions otherwise go to playback_checkpoint; see PlaybackPositionStore */
+    @Query("UPDATE episode_metadata SET isListenedTo = 1, currentPos = :currentPos WHERE id = :id")
+    void markListenedTo(long id, int currentPos);
 }
@@ -0,0 +1,196 @@
+package com.weinmann.ccr.db;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.weinmann.ccr.Util;
+
+/*
+ * Hand-written schema migrations. The SQL must match what Room generates for the
+ * entities exactly, otherwise Room's schema validation fails when the database is opened.
+ */
+final class Migrations {
+
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `download_job` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`kind` INTEGER NOT NULL, " +
+                    "`targetId` INTEGER NOT NULL, " +
+                    "`state` INTEGER NOT NULL, " +
+                    "`bytesDone` INTEGER NOT NULL, " +
+                    "`failureReason` TEXT, " +
+                    "`updatedMillis` INTEGER NOT NULL)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_download_job_kind_targetId` " +
+                    "ON `download_job` (`kind`, `targetId`)");
+        }
+    };
+
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_isActive_audioAbsolutePath` " +
+                    "ON `episode_metadata` (`isActive`, `audioAbsolutePath`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_isActive_contentLength` " +
+                    "ON `episode_metadata` (`isActive`, `contentLength`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_podcastId` " +
+                    "ON `episode_metadata` (`podcastId`)");
+        }
+    };
+
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_pubDateMillis` " +
+                    "ON `episode_metadata` (`pubDateMillis`)");
+        }
+    };
+
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `episode_fts` " +
+                    "USING FTS4(`title` TEXT NOT NULL, `description` TEXT NOT NULL)");
+            Triggers.createEpisodeFtsTriggers(db);
+            db.execSQL("INSERT INTO `episode_fts`(`docid`, `title`, `description`) " +
+                    "SELECT `id`, `title`, `description` FROM `episode_metadata`");
+        }
+    };
+
+    /* Moves descriptions to episode_description as compressed plain text and rebuilds episode_metadata without them */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `episode_description` (" +
+                    "`episodeId` INTEGER NOT NULL, " +
+                    "`compressedText` BLOB NOT NULL, " +
+                    "PRIMARY KEY(`episodeId`))");
+
+            try (Cursor cursor = db.query("SELECT `id`, `description` FROM `episode_metadata`")) {
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    String plainText = Util.htmlToPlainText(cursor.getString(1));
+                    db.execSQL("INSERT OR REPLACE INTO `episode_description` (`episodeId`, `compressedText`) VALUES (?, ?)",
+                            new Object[]{id, Util.compressText(plainText)});
+                    db.execSQL("UPDATE `episode_fts` SET `description` = ? WHERE `docid` = ?",
+                            new Object[]{plainText, id});
+                }
+            }
+
+            String columns = "`id`, `podcastId`, `podcastName`, `title`, `enclosureUrl`, `pubDateMillis`, " +
+                    "`audioAbsolutePath`, `mimeType`, `contentLength`, `currentPos`, `duration`, " +
+                    "`isActive`, `isListenedTo`, `useForHistory`";
+            db.execSQL("CREATE TABLE IF NOT EXISTS `episode_metadata_new` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`podcastId` INTEGER NOT NULL, " +
+                    "`podcastName` TEXT NOT NULL, " +
+                    "`title` TEXT NOT NULL, " +
+                    "`enclosureUrl` TEXT NOT NULL, " +
+                    "`pubDateMillis` INTEGER NOT NULL, " +
+                    "`audioAbsolutePath` TEXT, " +
+                    "`mimeType` TEXT, " +
+                    "`contentLength` INTEGER NOT NULL, " +
+                    "`currentPos` INTEGER NOT NULL, " +
+                    "`duration` INTEGER NOT NULL, " +
+                    "`isActive` INTEGER NOT NULL, " +
+                    "`isListenedTo` INTEGER NOT NULL, " +
+                    "`useForHistory` INTEGER NOT NULL)");
+            db.execSQL("INSERT INTO `episode_metadata_new` (" + columns + ") " +
+                    "SELECT " + columns + " FROM `episode_metadata`");
+            // Also drops the old FTS sync triggers, which read the description column
+            db.execSQL("DROP TABLE `episode_metadata`");
+            db.execSQL("ALTER TABLE `episode_metadata_new` RENAME TO `episode_metadata`");
+
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_episode_metadata_enclosureUrl` " +
+                    "ON `episode_metadata` (`enclosureUrl`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_isActive_audioAbsolutePath` " +
+                    "ON `episode_metadata` (`isActive`, `audioAbsolutePath`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_isActive_contentLength` " +
+                    "ON `episode_metadata` (`isActive`, `contentLength`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_podcastId` " +
+                    "ON `episode_metadata` (`podcastId`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_pubDateMillis` " +
+                    "ON `episode_metadata` (`pubDateMillis`)");
+
+            Triggers.createEpisodeSideTableTriggers(db);
+        }
+    };
+
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `episode_history` (" +
+                    "`urlHash` INTEGER NOT NULL, " +
+                    "`podcastId` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`urlHash`))");
+        }
+    };
+
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `podcast_stats` (" +
+                    "`podcastId` INTEGER NOT NULL, " +
+                    "`bytesOnDisk` INTEGER NOT NULL, " +
+                    "`downloadedCount` INTEGER NOT NULL, " +
+                    "`unplayedCount` INTEGER NOT NULL, " +
+                    "`lastRefreshMillis` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`podcastId`))");
+            db.execSQL("INSERT INTO `podcast_stats` " +
+                    "(`podcastId`, `bytesOnDisk`, `downloadedCount`, `unplayedCount`, `lastRefreshMillis`) " +
+                    "SELECT `podcastId`, " +
+                    "SUM(CASE WHEN `isActive` = 1 AND `audioAbsolutePath` IS NOT NULL THEN `contentLength` ELSE 0 END), " +
+                    "SUM(`isActive` = 1 AND `audioAbsolutePath` IS NOT NULL), " +
+                    "SUM(`isActive` = 1 AND `audioAbsolutePath` IS NOT NULL AND `isListenedTo` = 0), " +
+                    "0 " +
+                    "FROM `episode_metadata` GROUP BY `podcastId`");
+            Triggers.createPodcastStatsTriggers(db);
+        }
+    };
+
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `playback_checkpoint` (" +
+                    "`episodeId` INTEGER NOT NULL, " +
+                    "`position` INTEGER NOT NULL, " +
+                    "`updatedMillis` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`episodeId`))");
+        }
+    };
+
+    /* Stores each episode's URL hash so the refresh's seen-URL filter is built without hashing */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `episode_metadata` ADD COLUMN `urlHash` INTEGER NOT NULL DEFAULT 0");
+            try (Cursor cursor = db.query("SELECT `id`, `enclosureUrl` FROM `episode_metadata`")) {
+                while (cursor.moveToNext()) {
+                    db.execSQL("UPDATE `episode_metadata` SET `urlHash` = ? WHERE `id` = ?",
+                            new Object[]{Util.hashUrl(cursor.getString(1)), cursor.getLong(0)});
+                }
+            }
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_episode_metadata_urlHash` " +
+                    "ON `episode_metadata` (`urlHash`)");
+        }
+    };
+
+    static final Migration[] ALL = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10
+    };
+
+    private Migrations() {
+    }
+}
@@ -0,0 +1,36 @@
+package com.weinmann.ccr.db;
+
+import androidx.room.*;
+
+import com.weinmann.ccr.records.PlaybackCheckpoint;
+
+import java.util.Collection;
+
+@Dao
+public interface PlaybackCheckpointDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(PlaybackCheckpoint checkpoint);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertAll(Collection<PlaybackCheckpoint> checkpoints);
+
+    /* A listened-to flush writes its position to episode_metadata, superseding the checkpoint */
+    @Query("DELETE FROM playback_checkpoint WHERE episodeId IN (:episodeIds)")
+    void deleteForEpisodes(Collection<Long> episodeIds);
+
+    @Query("UPDATE episode_metadata " +
+            "SET currentPos = (SELECT position FROM playback_checkpoint WHERE episodeId = episode_metadata.id) " +
+            "WHERE id IN (SELECT episodeId FROM playback_checkpoint)")
+    int applyToEpisodes();
+
+    @Query("DELETE FROM playback_checkpoint")
+    void deleteAll();
+
+    /* Recovers positions saved by an earlier process; returns how many */
+    @Transaction
+    default int foldIntoEpisodes() {
+        int recovered = applyToEpisodes();
+        deleteAll();
+        return recovered;
+    }
+}
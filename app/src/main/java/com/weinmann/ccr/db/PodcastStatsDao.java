@@ -0,0 +1,31 @@
+package com.weinmann.ccr.db;
+
+import androidx.room.*;
+
+import com.weinmann.ccr.records.PodcastListing;
+
+import java.util.List;
+
+@Dao
+public interface PodcastStatsDao {
+    @Query("SELECT podcast_metadata.*, " +
+            "IFNULL(bytesOnDisk, 0) AS bytesOnDisk, " +
+            "IFNULL(downloadedCount, 0) AS downloadedCount, " +
+            "IFNULL(unplayedCount, 0) AS unplayedCount, " +
+            "IFNULL(lastRefreshMillis, 0) AS lastRefreshMillis " +
+            "FROM podcast_metadata LEFT JOIN podcast_stats ON podcast_stats.podcastId = podcast_metadata.id")
+    List<PodcastListing> getAllListings();
+
+    @Query("INSERT OR IGNORE INTO podcast_stats (podcastId, bytesOnDisk, downloadedCount, unplayedCount, lastRefreshMillis) " +
+            "VALUES (:podcastId, 0, 0, 0, 0)")
+    void ensureRow(long podcastId);
+
+    @Query("UPDATE podcast_stats SET lastRefreshMillis = :refreshedMillis WHERE podcastId = :podcastId")
+    void updateLastRefresh(long podcastId, long refreshedMillis);
+
+    @Transaction
+    default void markRefreshed(long podcastId, long refreshedMillis) {
+        ensureRow(podcastId);
+        updateLastRefresh(podcastId, refreshedMillis);
+    }
+}
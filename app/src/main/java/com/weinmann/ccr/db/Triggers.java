@@ -0,0 +1,83 @@
+package com.weinmann.ccr.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/*
+ * Triggers Room doesn't know about. Created by the migration that introduces them and,
+ * for fresh installs, by CALLBACK once Room has created the tables.
+ */
+final class Triggers {
+
+    static final RoomDatabase.Callback CALLBACK = new RoomDatabase.Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            createEpisodeSideTableTriggers(db);
+            createPodcastStatsTriggers(db);
+        }
+    };
+
+    /* Version 5 only: MIGRATION_5_6 drops these along with the description column they read */
+    static void createEpisodeFtsTriggers(@NonNull SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `episode_fts_after_insert` " +
+                "AFTER INSERT ON `episode_metadata` BEGIN " +
+                "INSERT INTO `episode_fts`(`docid`, `title`, `description`) " +
+                "VALUES (NEW.`id`, NEW.`title`, NEW.`description`); END");
+        // Only fires when the indexed columns are written, not for position or flag updates
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `episode_fts_after_update` " +
+                "AFTER UPDATE OF `title`, `description` ON `episode_metadata` BEGIN " +
+                "UPDATE `episode_fts` SET `title` = NEW.`title`, `description` = NEW.`description` " +
+                "WHERE `docid` = NEW.`id`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `episode_fts_after_delete` " +
+                "AFTER DELETE ON `episode_metadata` BEGIN " +
+                "DELETE FROM `episode_fts` WHERE `docid` = OLD.`id`; END");
+    }
+
+    /* episode_fts and episode_description rows are written at ingest; this removes them with the episode */
+    static void createEpisodeSideTableTriggers(@NonNull SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `episode_side_tables_after_delete` " +
+                "AFTER DELETE ON `episode_metadata` BEGIN " +
+                "DELETE FROM `episode_fts` WHERE `docid` = OLD.`id`; " +
+                "DELETE FROM `episode_description` WHERE `episodeId` = OLD.`id`; END");
+    }
+
+    // An episode counts towards podcast_stats once it is active and has its audio file
+    private static final String NEW_DOWNLOADED = "(NEW.`isActive` = 1 AND NEW.`audioAbsolutePath` IS NOT NULL)";
+    private static final String OLD_DOWNLOADED = "(OLD.`isActive` = 1 AND OLD.`audioAbsolutePath` IS NOT NULL)";
+
+    private static final String ENSURE_NEW_STATS_ROW = "INSERT OR IGNORE INTO `podcast_stats` " +
+            "(`podcastId`, `bytesOnDisk`, `downloadedCount`, `unplayedCount`, `lastRefreshMillis`) " +
+            "VALUES (NEW.`podcastId`, 0, 0, 0, 0); ";
+    private static final String ADD_NEW = "UPDATE `podcast_stats` SET " +
+            "`bytesOnDisk` = `bytesOnDisk` + (CASE WHEN " + NEW_DOWNLOADED + " THEN NEW.`contentLength` ELSE 0 END), " +
+            "`downloadedCount` = `downloadedCount` + " + NEW_DOWNLOADED + ", " +
+            "`unplayedCount` = `unplayedCount` + (" + NEW_DOWNLOADED + " AND NEW.`isListenedTo` = 0) " +
+            "WHERE `podcastId` = NEW.`podcastId`; ";
+    private static final String SUBTRACT_OLD = "UPDATE `podcast_stats` SET " +
+            "`bytesOnDisk` = `bytesOnDisk` - (CASE WHEN " + OLD_DOWNLOADED + " THEN OLD.`contentLength` ELSE 0 END), " +
+            "`downloadedCount` = `downloadedCount` - " + OLD_DOWNLOADED + ", " +
+            "`unplayedCount` = `unplayedCount` - (" + OLD_DOWNLOADED + " AND OLD.`isListenedTo` = 0) " +
+            "WHERE `podcastId` = OLD.`podcastId`; ";
+
+    /* Each change takes the old row's contribution out of podcast_stats and puts the new one in */
+    static void createPodcastStatsTriggers(@NonNull SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `podcast_stats_after_episode_insert` " +
+                "AFTER INSERT ON `episode_metadata` BEGIN " +
+                ENSURE_NEW_STATS_ROW + ADD_NEW + "END");
+        // Position saves don't touch these columns, so they never fire this
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `podcast_stats_after_episode_update` " +
+                "AFTER UPDATE OF `podcastId`, `isActive`, `audioAbsolutePath`, `contentLength`, `isListenedTo` " +
+                "ON `episode_metadata` BEGIN " +
+                SUBTRACT_OLD + ENSURE_NEW_STATS_ROW + ADD_NEW + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `podcast_stats_after_episode_delete` " +
+                "AFTER DELETE ON `episode_metadata` BEGIN " +
+                SUBTRACT_OLD + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `podcast_stats_after_podcast_delete` " +
+                "AFTER DELETE ON `podcast_metadata` BEGIN " +
+                "DELETE FROM `podcast_stats` WHERE `podcastId` = OLD.`id`; END");
+    }
+
+    private Triggers() {
+    }
+}
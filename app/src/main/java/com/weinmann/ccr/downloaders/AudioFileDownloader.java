@@ -7,52 +7,84 @@ import android.util.Log;
 import android.webkit.MimeTypeMap;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.weinmann.ccr.DownloadedFiles;
+import com.weinmann.ccr.Mp3SeekIndex;
 import com.weinmann.ccr.records.EpisodeMetadata;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AudioFileDownloader extends BaseDownloader {
     public static final String TAG = "AudioFileDownloader";
+    // What feeds, and guessMimeTypeFromUrl, call MP3
+    private static final Set<String> MP3_MIME_TYPES = Set.of(
+            "audio/mpeg", "audio/mp3", "audio/mpeg3", "audio/mpg",
+            "audio/x-mpeg", "audio/x-mp3", "audio/x-mpeg3", "audio/x-mpg");
     private final Context context;
+    private String failureReason = null;
 
     public AudioFileDownloader(Context context, AtomicBoolean abortRequested) {
         super(abortRequested);
         this.context = context;
     }
 
+    /* Why the last call to download() returned the original episode, or null if it succeeded */
+    public String getFailureReason() {
+        return failureReason;
+    }
+
     public EpisodeMetadata download(@NonNull EpisodeMetadata originalEpisode) {
         File audioFile;
+        failureReason = null;
 
         try {
             audioFile = generateAudioFile(originalEpisode);
         } catch (IOException e) {
             Log.e(TAG, "Error generating audio file", e);
+            failureReason = "Error generating audio file: " + e.getMessage();
             return originalEpisode;
         }
 
-        try (OutputStream out  = new FileOutputStream(audioFile)) {
+        // MP3s get a seek index built from the frame headers as the bytes go by
+        Mp3SeekIndex.Builder indexBuilder = null;
+        try (OutputStream fileOut = new FileOutputStream(audioFile)) {
+            OutputStream out = fileOut;
+            if (isMp3(originalEpisode.mimeType())) {
+                indexBuilder = new Mp3SeekIndex.Builder(fileOut);
+                out = indexBuilder;
+            }
             fetchBinaryUrl(originalEpisode.enclosureUrl(), out);
-            if (abortRequested.get()) return originalEpisode;
+            if (abortRequested.get()) {
+                failureReason = "Aborted";
+                return originalEpisode;
+            }
 
             if (currentBytes <= 0) {
                 Log.e(TAG, "Downloaded 0 bytes — aborting");
+                failureReason = "Downloaded 0 bytes";
                 return originalEpisode;
             }
 
         } catch (Exception e) {
             Log.e(TAG, "Error opening output stream", e);
+            failureReason = "Error downloading: " + e.getMessage();
             return originalEpisode;
         }
 
+        writeSeekIndex(indexBuilder, audioFile);
+
         try {
             int duration = getAudioDuration(audioFile.getAbsolutePath());
+            DownloadedFiles.getInstance(context).markPresent(audioFile.getAbsolutePath());
             return EpisodeMetadata.createCopyForDownload(
                     originalEpisode,
                     audioFile.getAbsolutePath(),
@@ -60,11 +92,39 @@ public class AudioFileDownloader extends BaseDownloader {
                     duration);
         } catch (IOException e) {
             Log.e(TAG, "Error opening output stream", e);
+            failureReason = "Error reading duration: " + e.getMessage();
         }
 
         return originalEpisode;
     }
 
+    /* Ignores case and parameters such as "; charset=binary" */
+    private static boolean isMp3(@Nullable String mimeType) {
+        if (mimeType == null) return false;
+
+        int parameters = mimeType.indexOf(';');
+        String type = parameters >= 0 ? mimeType.substring(0, parameters) : mimeType;
+        return MP3_MIME_TYPES.contains(type.trim().toLowerCase(Locale.US));
+    }
+
+    /* The index only speeds up seeking, so failing to write it doesn't fail the download */
+    private static void writeSeekIndex(Mp3SeekIndex.Builder indexBuilder, @NonNull File audioFile) {
+        File indexFile = Mp3SeekIndex.fileFor(audioFile.getAbsolutePath());
+        try {
+            Mp3SeekIndex index = indexBuilder == null ? null : indexBuilder.build();
+            if (index == null) {
+                Files.deleteIfExists(indexFile.toPath());
+                return;
+            }
+
+            index.writeTo(indexFile);
+            Log.d(TAG, "Wrote seek index with " + index.size() + " entries for " + audioFile.getName());
+        } catch (IOException e) {
+            // A partial index is rejected on read, since its recorded length won't match the file
+            Log.w(TAG, "Could not write seek index for " + audioFile.getName(), e);
+        }
+    }
+
     private static int getAudioDuration(String audioFileAbsolutePath) throws IOException {
         try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
             retriever.setDataSource(audioFileAbsolutePath);
@@ -82,7 +142,7 @@ public class AudioFileDownloader extends BaseDownloader {
                 episode.id(),
                 extension);
 
-        File podcastsDir = context.getExternalFilesDir(Environment.DIRECTORY_PODCASTS);
+        File podcastsDir = getPodcastsDir();
         if (podcastsDir == null) {
             throw new IllegalStateException("External storage not available");
         }
@@ -93,4 +153,10 @@ public class AudioFileDownloader extends BaseDownloader {
 
         return new File(podcastsDir, fileName);
     }
+
+    /* Where downloads go; a seam so tests can keep their files out of the real podcasts directory */
+    @Nullable
+    protected File getPodcastsDir() {
+        return context.getExternalFilesDir(Environment.DIRECTORY_PODCASTS);
+    }
 }
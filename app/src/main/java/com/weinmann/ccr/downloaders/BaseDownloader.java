@@ -12,6 +12,12 @@ import java.net.URL;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class BaseDownloader {
+    private static final int MAX_REDIRECTS = 5;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final int HTTP_TEMPORARY_REDIRECT = 307;
+    private static final int HTTP_PERMANENT_REDIRECT = 308;
+
     protected final AtomicBoolean abortRequested;
     protected long currentBytes = 0;
 
@@ -48,26 +54,75 @@ public abstract class BaseDownloader {
         HttpURLConnection connection = openConnection(urlString);
 
         try (InputStream in = connection.getInputStream()) {
+            long expectedBytes = connection.getContentLengthLong();
 
             byte[] buffer = new byte[8192];
             int len;
             while ((len = in.read(buffer)) != -1) {
-                if (abortRequested.get()) break;
+                if (abortRequested.get()) return;
                 outputStream.write(buffer, 0, len);
                 currentBytes += len;
             }
+
+            // A connection reset can look like a clean end of stream; only Content-Length can tell
+            if (expectedBytes >= 0 && currentBytes < expectedBytes) {
+                throw new IOException("Truncated body: got " + currentBytes + " of " + expectedBytes + " bytes");
+            }
         } finally {
             connection.disconnect();
         }
     }
 
+    /* Opens a GET connection, following redirects (including http <-> https) and rejecting error statuses */
     @NonNull
     private HttpURLConnection openConnection(String urlString) throws IOException {
         URL url = new URL(urlString);
+
+        for (int redirects = 0; redirects <= MAX_REDIRECTS; ++redirects) {
+            HttpURLConnection connection = createConnection(url);
+            connection.setRequestMethod("GET");
+            connection.setInstanceFollowRedirects(false);
+
+            int responseCode = connection.getResponseCode();
+            if (isRedirect(responseCode)) {
+                String location = connection.getHeaderField("Location");
+                connection.disconnect();
+                if (location == null) {
+                    throw new IOException("HTTP " + responseCode + " without Location for " + url);
+                }
+                url = new URL(url, location);
+                continue;
+            }
+
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IOException("HTTP " + responseCode + " for " + url);
+            }
+
+            return connection;
+        }
+
+        throw new IOException("Too many redirects for " + urlString);
+    }
+
+    /* 304 and the other 3xx codes aren't redirects, whether or not they carry a Location */
+    private static boolean isRedirect(int responseCode) {
+        return switch (responseCode) {
+            case HttpURLConnection.HTTP_MOVED_PERM,
+                 HttpURLConnection.HTTP_MOVED_TEMP,
+                 HttpURLConnection.HTTP_SEE_OTHER,
+                 HTTP_TEMPORARY_REDIRECT,
+                 HTTP_PERMANENT_REDIRECT -> true;
+            default -> false;
+        };
+    }
+
+    /* Seam for pointing the downloaders at a local stand-in server; sets the timeouts */
+    @NonNull
+    protected HttpURLConnection createConnection(@NonNull URL url) throws IOException {
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setConnectTimeout(10000);
-        connection.setReadTimeout(30000);
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
         return connection;
     }
 }
@@ -4,10 +4,14 @@ import android.content.Context;
 
 import com.weinmann.ccr.*;
 import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.DbExecutors;
+import com.weinmann.ccr.db.EpisodeDescriptionDao;
+import com.weinmann.ccr.db.EpisodeHistoryDao;
 import com.weinmann.ccr.db.EpisodeMetadataDao;
 import com.weinmann.ccr.records.*;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -23,17 +27,28 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class PodcastDownloader extends BaseDownloader {
 
+    private static final double SEEN_URLS_FALSE_POSITIVE_RATE = 0.01;
+
     private final Context context;
+    private final AppDatabase db;
+    // Every enclosure URL hash in episode_metadata and episode_history; null until loadSeenUrls()
+    private LongBloomFilter seenUrls = null;
 
     public PodcastDownloader(@NonNull Context context, @NonNull AtomicBoolean abortRequested) {
+        this(context, AppDatabase.getInstance(context), abortRequested);
+    }
+
+    @VisibleForTesting
+    PodcastDownloader(@NonNull Context context, @NonNull AppDatabase db, @NonNull AtomicBoolean abortRequested) {
         super(abortRequested);
         this.context = context;
+        this.db = db;
     }
 
     public int testPodcast(PodcastMetadata podcast) {
         try {
             String rssContent = fetchTextUrl(podcast.url());
-            List<EpisodeMetadata> items = parseRss(podcast.id(), rssContent, podcast.getCalculatedMaxDownloads(context));
+            List<RssItem> items = parseRss(podcast.id(), rssContent, podcast.getCalculatedMaxDownloads(CcrApplication.getSettings(context)));
             return items.size();
         } catch (Exception e) {
             return 0;
@@ -47,36 +62,64 @@ public class PodcastDownloader extends BaseDownloader {
         return item;
     }
 
+    /* Call at the start of a refresh so most new episodes are recognized without a query */
+    public void loadSeenUrls() {
+        List<Long> episodeHashes = db.episodeMetadataDao().getAllUrlHashes();
+        List<Long> historyHashes = db.episodeHistoryDao().getAllUrlHashes();
+
+        // Headroom for the episodes this refresh will add
+        LongBloomFilter filter = new LongBloomFilter((episodeHashes.size() + historyHashes.size()) * 2 + 1000,
+                SEEN_URLS_FALSE_POSITIVE_RATE);
+        for (long urlHash : episodeHashes) {
+            filter.put(urlHash);
+        }
+        for (long urlHash : historyHashes) {
+            filter.put(urlHash);
+        }
+        seenUrls = filter;
+    }
+
     public String downloadPodcast(PodcastMetadata podcast) throws Exception {
-        AppDatabase db = AppDatabase.getInstance(context);
         EpisodeMetadataDao dao = db.episodeMetadataDao();
+        EpisodeHistoryDao historyDao = db.episodeHistoryDao();
 
         String rssContent = fetchTextUrl(podcast.url());
         if (abortRequested.get()) return "Aborted after RSS download";
+        long refreshedMillis = System.currentTimeMillis();
+        AppDatabase.executeWriteAndWait(DbExecutors.PRIORITY_BULK,
+                () -> db.podcastStatsDao().markRefreshed(podcast.id(), refreshedMillis));
 
-        List<EpisodeMetadata> items = parseRss(podcast.id(),
+        List<RssItem> items = parseRss(podcast.id(),
                                                rssContent,
-                                               podcast.getCalculatedMaxDownloads(context));
+                                               podcast.getCalculatedMaxDownloads(CcrApplication.getSettings(context)));
         StringBuilder resultMessageSb = new StringBuilder();
         resultMessageSb.append("Found ").append(items.size()).append(" items in RSS\n");
 
         int savedCount = 0;
-        for (EpisodeMetadata item : items) {
+        for (RssItem rssItem : items) {
+            EpisodeMetadata item = rssItem.episode();
             if (abortRequested.get()) {
                 resultMessageSb.append(" Aborted while checking ").append(item.title());
                 return resultMessageSb.toString();
             }
 
-            EpisodeMetadata existing = dao.getByUrl(item.enclosureUrl());
+            long urlHash = item.urlHash();
+            boolean definitelyNew = seenUrls != null && !seenUrls.mightContain(urlHash);
+            EpisodeMetadata existing = definitelyNew ? null : dao.getByUrl(item.enclosureUrl());
             if (existing != null) {
                 if (existing.useForHistory()) {
                     continue; // already downloaded
                 }
 
-                item = createCopyToAllowRedownloadingThisTimeButNotInTheFuture(existing);
-            }
+                saveEpisodeMetadataFile(createCopyToAllowRedownloadingThisTimeButNotInTheFuture(existing));
+            } else {
+                if (!definitelyNew && historyDao.contains(urlHash)) {
+                    continue; // downloaded long ago, compacted by HistoryCompactor
+                }
 
-            saveEpisodeMetadataFile(item);
+                insertNewEpisode(db, item, rssItem.description());
+                if (seenUrls != null) seenUrls.put(urlHash);
+            }
             savedCount++;
         }
 
@@ -84,9 +127,13 @@ public class PodcastDownloader extends BaseDownloader {
         return resultMessageSb.toString();
     }
 
+    /* The description travels beside the episode because it is stored in its own table */
+    private record RssItem(@NonNull EpisodeMetadata episode, @NonNull String description) {
+    }
+
     @NonNull
-    private List<EpisodeMetadata> parseRss(long podcastId, String rssContent, int maxDownloads) throws Exception {
-        List<EpisodeMetadata> items = new ArrayList<>();
+    private List<RssItem> parseRss(long podcastId, String rssContent, int maxDownloads) throws Exception {
+        List<RssItem> items = new ArrayList<>();
 
         XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
         factory.setNamespaceAware(false);
@@ -153,12 +200,11 @@ public class PodcastDownloader extends BaseDownloader {
                         if (!title.isEmpty() && !enclosureUrl.isEmpty()) {
                             Instant pubDateInstant = ZonedDateTime.parse(pubDate, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
 
-                            items.add(new EpisodeMetadata(
+                            EpisodeMetadata episode = new EpisodeMetadata(
                                     0L,
                                     podcastId,
                                     podcastName,
                                     title,
-                                    description,
                                     enclosureUrl,
                                     pubDateInstant.toEpochMilli(),
                                     null,
@@ -168,7 +214,9 @@ public class PodcastDownloader extends BaseDownloader {
                                     0,
                                     true,
                                     false,
-                                    true));
+                                    true,
+                                    Util.hashUrl(enclosureUrl));
+                            items.add(new RssItem(episode, description));
                         }
                     } else if ("channel".equalsIgnoreCase(endTag)) {
                         inChannel = false;
@@ -183,14 +231,23 @@ public class PodcastDownloader extends BaseDownloader {
     }
 
     private void saveEpisodeMetadataFile(@NonNull EpisodeMetadata item) {
-        AppDatabase db = AppDatabase.getInstance(context);
+        AppDatabase.executeWriteAndWait(DbExecutors.PRIORITY_BULK, () -> db.episodeMetadataDao().update(item));
+    }
 
-        EpisodeMetadataDao dao = db.episodeMetadataDao();
-        if (item.id() > 0) {
-            dao.update(item);
-        } else {
-            dao.insert(item);
-        }
+    private static void insertNewEpisode(@NonNull AppDatabase db, @NonNull EpisodeMetadata item, @NonNull String html) {
+        String plainText = Util.htmlToPlainText(html);
+        byte[] compressedText = Util.compressText(plainText);
+        EpisodeDescriptionDao descriptionDao = db.episodeDescriptionDao();
+
+        AppDatabase.executeWriteAndWait(DbExecutors.PRIORITY_BULK, () -> db.runInTransaction(() -> {
+            long episodeId = db.episodeMetadataDao().insert(item);
+            if (episodeId < 0) {
+                // Already ingested under this enclosureUrl; its side-table rows are already there
+                return;
+            }
+            descriptionDao.insert(new EpisodeDescription(episodeId, compressedText));
+            descriptionDao.insertFts(new EpisodeFts(episodeId, item.title(), plainText));
+        }));
     }
 
     private static @NonNull String guessMimeTypeFromUrl(String url) {
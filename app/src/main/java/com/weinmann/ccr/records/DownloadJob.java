@@ -0,0 +1,61 @@
+package com.weinmann.ccr.records;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import org.jetbrains.annotations.Contract;
+
+/*
+ * One row per unit of work in a download run (a feed refresh or an audio file download).
+ * Rows left QUEUED or RUNNING after the process dies are what DownloadService resumes from.
+ */
+@Entity(
+        tableName = "download_job",
+        indices = {
+                @Index(value = {"kind", "targetId"}, unique = true)
+        }
+)
+
+public record DownloadJob(
+        @PrimaryKey(autoGenerate = true)
+        long id,
+
+        int kind,
+
+        /* podcast_metadata.id or episode_metadata.id, depending on kind */
+        long targetId,
+
+        int state,
+
+        long bytesDone,
+
+        @Nullable
+        String failureReason,
+
+        /* UTC epoch millis */
+        long updatedMillis)
+{
+    public static final int KIND_PODCAST = 0;
+    public static final int KIND_EPISODE = 1;
+
+    public static final int STATE_QUEUED = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_DONE = 2;
+    public static final int STATE_FAILED = 3;
+
+    @NonNull
+    @Contract("_, _ -> new")
+    public static DownloadJob createQueued(int kind, long targetId) {
+        return new DownloadJob(
+                0L,
+                kind,
+                targetId,
+                STATE_QUEUED,
+                0L,
+                null,
+                System.currentTimeMillis());
+    }
+}
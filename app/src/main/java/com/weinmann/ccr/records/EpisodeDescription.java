@@ -0,0 +1,19 @@
+package com.weinmann.ccr.records;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/*
+ * Episode description, stripped to plain text at ingest and deflated (see Util.compressText).
+ * Lives outside episode_metadata so list and download queries never page it in.
+ */
+@Entity(tableName = "episode_description")
+public record EpisodeDescription(
+        @PrimaryKey
+        long episodeId,
+
+        @NonNull
+        byte[] compressedText)
+{
+}
@@ -0,0 +1,26 @@
+package com.weinmann.ccr.records;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.PrimaryKey;
+
+/*
+ * Full-text index over episode titles and plain-text descriptions; rowid is episode_metadata.id.
+ * Rows are written at ingest alongside EpisodeDescription and removed by a trigger in db/Triggers.
+ */
+@Fts4
+@Entity(tableName = "episode_fts")
+public record EpisodeFts(
+        @PrimaryKey
+        @ColumnInfo(name = "rowid")
+        long rowid,
+
+        @NonNull
+        String title,
+
+        @NonNull
+        String description)
+{
+}
@@ -0,0 +1,17 @@
+package com.weinmann.ccr.records;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/*
+ * Compacted form of an old, inactive episode: just enough to keep PodcastDownloader from
+ * fetching it again. urlHash is Util.hashUrl of the normalized enclosure URL.
+ */
+@Entity(tableName = "episode_history")
+public record EpisodeHistory(
+        @PrimaryKey
+        long urlHash,
+
+        long podcastId)
+{
+}
@@ -2,6 +2,7 @@ package com.weinmann.ccr.records;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Index;
 import androidx.room.PrimaryKey;
@@ -15,7 +16,16 @@ import java.time.format.DateTimeFormatter;
 @Entity(
         tableName = "episode_metadata",
         indices = {
-                @Index(value = {"enclosureUrl"}, unique = true)
+                @Index(value = {"enclosureUrl"}, unique = true),
+                // getActive / getObservable: filter and sort straight off the index
+                @Index(value = {"isActive", "audioAbsolutePath"}),
+                // getToDownload
+                @Index(value = {"isActive", "contentLength"}),
+                @Index(value = {"podcastId"}),
+                // getHistoryPaged
+                @Index(value = {"pubDateMillis"}),
+                // getAllUrlHashes reads the index instead of the rows
+                @Index(value = {"urlHash"})
         }
 )
 
@@ -31,9 +41,6 @@ public record EpisodeMetadata(
         @NonNull
         String title,
 
-        @NonNull
-        String description,
-
         @NonNull
         String enclosureUrl,
 
@@ -54,7 +61,11 @@ public record EpisodeMetadata(
         int duration,
         boolean isActive,
         boolean isListenedTo,
-        boolean useForHistory)
+        boolean useForHistory,
+
+        /* Util.hashUrl(enclosureUrl), stored at insert so a refresh needn't rehash every episode */
+        @ColumnInfo(defaultValue = "0")
+        long urlHash)
 {
     private static final int LISTENED_TO_IF_LESS_THAN_PERCENT_LEFT = 5;
     private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.systemDefault());
@@ -70,7 +81,6 @@ return new EpisodeMetadata(
                 original.podcastId(),
                 original.podcastName(),
                 original.title(),
-                original.description(),
                 original.enclosureUrl(),
                 original.pubDateMillis(),
                 audioAbsolutePath,
@@ -80,46 +90,24 @@ return new EpisodeMetadata(
                 duration,
                 true,
                 false,
-                true
+                true,
+                original.urlHash()
         );
     }
 
-    @Contract("_, _, _ -> new")
-    @NonNull
-
-    public static EpisodeMetadata createCopyForUpdate(EpisodeMetadata original,
-                                                      int currentPos,
-                                                      boolean isActive) {
-        return new EpisodeMetadata(
-                original.id(),
-                original.podcastId(),
-                original.podcastName(),
-                original.title(),
-                original.description(),
-                original.enclosureUrl(),
-                original.pubDateMillis(),
-                original.audioAbsolutePath(),
-                original.mimeType(),
-                original.contentLength(),
-                currentPos,
-                original.duration(),
-                isActive,
-                original.shouldSetListenedTo(currentPos),
-                true
-        );
+    public String getPubDateString() {
+        return formatPubDate(pubDateMillis);
     }
 
-    public String getPubDateString() {
+    public static String formatPubDate(long pubDateMillis) {
         Instant instant = Instant.ofEpochMilli(pubDateMillis);
         return dateTimeFormatter.format(instant);
     }
 
-    private boolean shouldSetListenedTo(int newPosition) {
-        if (isListenedTo) return true;
-
+    public static boolean isNearEnd(int position, int duration) {
         if (duration == 0) return false;
 
-        int millisecondsLeft = duration - newPosition;
+        int millisecondsLeft = duration - position;
         return millisecondsLeft * 100 / duration < LISTENED_TO_IF_LESS_THAN_PERCENT_LEFT;
     }
 
@@ -0,0 +1,79 @@
+package com.weinmann.ccr.records;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jetbrains.annotations.Contract;
+
+import java.util.Objects;
+
+/*
+ * Slim read-only projection of episode_metadata for lists and the playback queue.
+ * Leaves out the description, which lives in episode_description; load it by id
+ * with EpisodeDescriptionDao.getCompressedText when a detail view needs it.
+ */
+public record EpisodeSummary(
+        long id,
+
+        long podcastId,
+
+        @NonNull
+        String podcastName,
+
+        @NonNull
+        String title,
+
+        /* UTC epoch millis */
+        long pubDateMillis,
+
+        @Nullable
+        String audioAbsolutePath,
+
+        int duration,
+
+        int currentPos,
+
+        boolean isActive,
+
+        boolean isListenedTo)
+{
+    @NonNull
+    @Contract("_ -> new")
+    public EpisodeSummary createCopyForPosition(int newPosition) {
+        return new EpisodeSummary(
+                id,
+                podcastId,
+                podcastName,
+                title,
+                pubDateMillis,
+                audioAbsolutePath,
+                duration,
+                newPosition,
+                isActive,
+                isListenedTo || EpisodeMetadata.isNearEnd(newPosition, duration));
+    }
+
+    /* Equal in everything a list or queue shows; playback position alone doesn't count */
+    public boolean sameListingAs(@NonNull EpisodeSummary other) {
+        return id == other.id
+                && podcastId == other.podcastId
+                && pubDateMillis == other.pubDateMillis
+                && duration == other.duration
+                && isActive == other.isActive
+                && isListenedTo == other.isListenedTo
+                && podcastName.equals(other.podcastName)
+                && title.equals(other.title)
+                && Objects.equals(audioAbsolutePath, other.audioAbsolutePath);
+    }
+
+    public String getPubDateString() {
+        return EpisodeMetadata.formatPubDate(pubDateMillis);
+    }
+
+    @NonNull
+    @Contract(pure = true)
+    @Override
+    public String toString() {
+        return podcastName + " | " + title;
+    }
+}
@@ -0,0 +1,21 @@
+package com.weinmann.ccr.records;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/*
+ * Latest position of an episode that is playing, written periodically so a killed process
+ * loses at most one interval. Lives outside episode_metadata so these writes don't
+ * invalidate the episode list observers; folded back in on flush or at the next start.
+ */
+@Entity(tableName = "playback_checkpoint")
+public record PlaybackCheckpoint(
+        @PrimaryKey
+        long episodeId,
+
+        int position,
+
+        /* UTC epoch millis */
+        long updatedMillis)
+{
+}
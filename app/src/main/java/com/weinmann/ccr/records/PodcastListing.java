@@ -0,0 +1,40 @@
+package com.weinmann.ccr.records;
+
+import android.content.Context;
+import android.text.format.Formatter;
+
+import androidx.annotation.NonNull;
+import androidx.room.Embedded;
+
+import org.jetbrains.annotations.Contract;
+
+/* A podcast joined with its podcast_stats row, for the podcasts list */
+public record PodcastListing(
+        @Embedded
+        @NonNull
+        PodcastMetadata podcast,
+
+        long bytesOnDisk,
+
+        int downloadedCount,
+
+        int unplayedCount,
+
+        long lastRefreshMillis)
+{
+    @NonNull
+    public String getStatsLine(@NonNull Context context) {
+        String refreshed = lastRefreshMillis == 0
+                ? "never refreshed"
+                : "refreshed " + EpisodeMetadata.formatPubDate(lastRefreshMillis);
+        return downloadedCount + " downloaded, " + unplayedCount + " unplayed, " +
+                Formatter.formatShortFileSize(context, bytesOnDisk) + ", " + refreshed;
+    }
+
+    @NonNull
+    @Contract(pure = true)
+    @Override
+    public String toString() {
+        return podcast.toString();
+    }
+}
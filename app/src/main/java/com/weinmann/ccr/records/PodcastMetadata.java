@@ -1,14 +1,9 @@
 package com.weinmann.ccr.records;
 
-import static android.content.Context.MODE_PRIVATE;
-
-import android.content.Context;
-import android.content.SharedPreferences;
-
 import androidx.annotation.NonNull;
 import androidx.room.*;
 
-import com.weinmann.ccr.CcrApplication;
+import com.weinmann.ccr.AppSettings;
 
 import org.jetbrains.annotations.Contract;
 
@@ -53,16 +48,11 @@ public record PodcastMetadata (
         return isActive ? title : title + " (disabled)";
     }
 
-    public int getCalculatedMaxDownloads(Context context) {
+    public int getCalculatedMaxDownloads(@NonNull AppSettings settings) {
         return switch (maxDownloads) {
-            case USE_GLOBAL_DEFAULT_MAX_DOWNLOADS -> {
-                SharedPreferences prefs = context.getSharedPreferences(CcrApplication.PREFS_NAME, MODE_PRIVATE);
-                yield prefs.getInt(CcrApplication.KEY_MAX_DOWNLOADS, CcrApplication.DEFAULT_MAX_DOWNLOADS_PER_PODCAST);
-            }
+            case USE_GLOBAL_DEFAULT_MAX_DOWNLOADS -> settings.maxDownloadsPerPodcast();
             case UNLIMITED_MAX_DOWNLOADS -> Integer.MAX_VALUE;
             default -> maxDownloads;
         };
-
-
     }
 }
@@ -0,0 +1,26 @@
+package com.weinmann.ccr.records;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/*
+ * Per-podcast aggregates, kept current by triggers on episode_metadata (see db/Triggers)
+ * so lists never have to scan episodes. "Downloaded" means active with an audio file.
+ */
+@Entity(tableName = "podcast_stats")
+public record PodcastStats(
+        @PrimaryKey
+        long podcastId,
+
+        /* Sum of contentLength over downloaded episodes */
+        long bytesOnDisk,
+
+        int downloadedCount,
+
+        /* Downloaded and not yet listened to */
+        int unplayedCount,
+
+        /* UTC epoch millis of the last successful feed fetch, 0 if never */
+        long lastRefreshMillis)
+{
+}
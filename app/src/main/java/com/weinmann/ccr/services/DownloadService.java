@@ -5,6 +5,7 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Build;
@@ -16,18 +17,27 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 
+import com.weinmann.ccr.AppSettings;
+import com.weinmann.ccr.CcrApplication;
 import com.weinmann.ccr.DownloadActivity;
+import com.weinmann.ccr.HistoryCompactor;
 import com.weinmann.ccr.R;
 import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.DbExecutors;
+import com.weinmann.ccr.db.DownloadJobDao;
 import com.weinmann.ccr.db.EpisodeMetadataDao;
 import com.weinmann.ccr.db.PodcastMetadataDao;
 import com.weinmann.ccr.downloaders.AudioFileDownloader;
 import com.weinmann.ccr.downloaders.PodcastDownloader;
+import com.weinmann.ccr.records.DownloadJob;
 import com.weinmann.ccr.records.EpisodeMetadata;
 import com.weinmann.ccr.records.PodcastMetadata;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -37,16 +47,20 @@ public class DownloadService extends Service {
     private static final String DOWNLOAD_CHANNEL_ID = "download_channel";
     private static final int DOWNLOAD_NOTIFICATION_ID = 2;
     private static final String ACTION_ABORT = "com.weinmann.ccr.ACTION_ABORT";
+    private static final String ACTION_RESUME = "com.weinmann.ccr.ACTION_RESUME";
 
     private final IBinder binder = new LocalBinder();
     private final AtomicBoolean isDownloading = new AtomicBoolean(false);
     private final AtomicBoolean abortRequested = new AtomicBoolean(false);
+    private final AtomicBoolean userAbortRequested = new AtomicBoolean(false);
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     
     private PodcastDownloader podcastDownloader;
     private AudioFileDownloader audioFileDownloader;
     private PodcastMetadataDao podcastMetadataDao;
     private EpisodeMetadataDao episodeMetadataDao;
+    private DownloadJobDao downloadJobDao;
+    private AppDatabase db;
     private ExecutorService downloadExecutor;
     private Runnable downloadRunnable;
     
@@ -57,6 +71,7 @@ public class DownloadService extends Service {
     private int completedEpisodes = 0;
     private String currentStatus = "";
     private String currentTitle = "";
+    private volatile long currentEpisodeId = -1;
     private StringBuilder logBuffer = new StringBuilder();
     
     private IDownloadCallback callback;
@@ -83,18 +98,23 @@ public class DownloadService extends Service {
         notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
         createDownloadNotificationChannel();
         
-        podcastMetadataDao = AppDatabase.getInstance(this).podcastMetadataDao();
-        episodeMetadataDao = AppDatabase.getInstance(this).episodeMetadataDao();
+        db = AppDatabase.getInstance(this);
+        podcastMetadataDao = db.podcastMetadataDao();
+        episodeMetadataDao = db.episodeMetadataDao();
+        downloadJobDao = db.downloadJobDao();
         podcastDownloader = new PodcastDownloader(this, abortRequested);
         audioFileDownloader = new AudioFileDownloader(this, abortRequested);
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null && ACTION_ABORT.equals(intent.getAction())) {
+        if (intent == null || ACTION_RESUME.equals(intent.getAction())) {
+            // Restarted by the system after the process was killed mid-run, or by resumeIfInterrupted
+            resumeInterruptedDownload();
+        } else if (ACTION_ABORT.equals(intent.getAction())) {
             abortDownload();
         }
-        return START_NOT_STICKY;
+        return START_STICKY;
     }
 
     @Override
@@ -129,12 +149,20 @@ public class DownloadService extends Service {
     }
 
     public void startDownload(Long podcastId) {
-        if (isDownloading.get()) {
+        if (podcastId == null) {
+            startRun(this::downloadAll);
+        } else {
+            startRun(() -> downloadSinglePodcast(podcastId));
+        }
+    }
+
+    private void startRun(@NonNull Runnable run) {
+        if (isDownloading.getAndSet(true)) {
             return;
         }
-        
-        isDownloading.set(true);
+
         abortRequested.set(false);
+        userAbortRequested.set(false);
         currentProgress = 0;
         completedPodcasts = 0;
         completedEpisodes = 0;
@@ -145,52 +173,143 @@ public class DownloadService extends Service {
         logBuffer = new StringBuilder();
         
         updateStatus(currentStatus);
-        showDownloadNotification("");
-        
-        downloadExecutor = Executors.newSingleThreadExecutor();
-        if (podcastId == null) {
-            downloadExecutor.execute(this::downloadAll);
-        } else {
-            downloadExecutor.execute(() -> downloadSinglePodcast(podcastId));
+        if (!showDownloadNotification("")) {
+            // Leave the job rows for resumeIfInterrupted to pick up once the app is in the foreground
+            isDownloading.set(false);
+            stopSelf();
+            return;
         }
+
+        downloadExecutor = Executors.newSingleThreadExecutor();
+        downloadExecutor.execute(run);
     }
 
     public void abortDownload() {
         abortRequested.set(true);
+        userAbortRequested.set(true);
         updateStatus("Aborting...");
         appendLog("Aborted");
     }
 
+    /*
+     * Restarts an interrupted run from the foreground. A sticky restart lands in the background,
+     * where Android 12+ may refuse startForeground, so the app calls this when it's next shown.
+     */
+    public static void resumeIfInterrupted(@NonNull Context context) {
+        Context appContext = context.getApplicationContext();
+        DownloadJobDao dao = AppDatabase.getInstance(appContext).downloadJobDao();
+        AppDatabase.getReadExecutor().execute(() -> {
+            if (dao.countUnfinished() > 0) {
+                Intent intent = new Intent(appContext, DownloadService.class).setAction(ACTION_RESUME);
+                new Handler(Looper.getMainLooper()).post(() -> appContext.startForegroundService(intent));
+            }
+        });
+    }
+
+    private void resumeInterruptedDownload() {
+        AppDatabase.getReadExecutor().execute(() -> {
+            boolean hasUnfinished = downloadJobDao.countUnfinished() > 0;
+            mainHandler.post(() -> {
+                if (isDownloading.get()) {
+                    // Already running; still answer startForegroundService with startForeground
+                    showDownloadNotification(currentTitle);
+                } else if (hasUnfinished) {
+                    startRun(this::resumeAll);
+                } else {
+                    // startForegroundService requires startForeground even when there's nothing to do
+                    startForegroundQuietly(buildDownloadNotification(""));
+                    dismissDownloadNotification();
+                    stopSelf();
+                }
+            });
+        });
+    }
+
     public void downloadSinglePodcast(long podcastId) {
         PodcastMetadata podcast = podcastMetadataDao.getById(podcastId);
-        downloadSpecifiedPodcasts(List.of(podcast));
+        downloadSpecifiedPodcasts(List.of(podcast), null);
     }
 
     private void downloadAll() {
+        // An explicit full download starts over, whatever an interrupted run left behind
         List<PodcastMetadata> podcasts = podcastMetadataDao.getActive();
-        downloadSpecifiedPodcasts(podcasts);
+        write(downloadJobDao::deleteAll);
+        downloadSpecifiedPodcasts(podcasts, null);
     }
 
-    private void downloadSpecifiedPodcasts(List<PodcastMetadata> podcasts) {
+    private void resumeAll() {
+        appendLog("Resuming interrupted download");
+
+        List<Long> podcastIds = downloadJobDao.getUnfinishedTargetIds(DownloadJob.KIND_PODCAST);
+        // Killed during the episode phase: every feed is already fresh, so only the episodes are left
+        Set<Long> episodeIds = podcastIds.isEmpty()
+                ? new HashSet<>(downloadJobDao.getUnfinishedTargetIds(DownloadJob.KIND_EPISODE))
+                : null;
+
+        List<PodcastMetadata> podcasts = new ArrayList<>();
+        for (long podcastId : podcastIds) {
+            PodcastMetadata podcast = podcastMetadataDao.getById(podcastId);
+            if (podcast != null) {
+                podcasts.add(podcast);
+            } else {
+                updateJobState(DownloadJob.KIND_PODCAST, podcastId, DownloadJob.STATE_FAILED, "Podcast deleted");
+            }
+        }
+
+        downloadSpecifiedPodcasts(podcasts, episodeIds);
+    }
+
+    /* Downloads every episode still to download afterwards, or only onlyEpisodeIds if given */
+    private void downloadSpecifiedPodcasts(List<PodcastMetadata> podcasts, Set<Long> onlyEpisodeIds) {
         totalPodcasts = podcasts.size();
 
+        write(() -> db.runInTransaction(() -> {
+            for (PodcastMetadata podcast : podcasts) {
+                downloadJobDao.insert(DownloadJob.createQueued(DownloadJob.KIND_PODCAST, podcast.id()));
+            }
+        }));
+
         guesstimateInitialTotalDownloads(podcasts);
         updateProgress(0);
         updatePodcastProgress(0, totalPodcasts);
 
-        downloadPodcasts(podcasts);
+        if (!podcasts.isEmpty()) {
+            podcastDownloader.loadSeenUrls();
+            downloadPodcasts(podcasts);
+        }
 
+        // Episodes deleted or deactivated since their row was queued would otherwise stay unfinished forever
+        write(downloadJobDao::deleteStaleEpisodeJobs);
         List<EpisodeMetadata> episodes = episodeMetadataDao.getToDownload();
+        if (onlyEpisodeIds != null) {
+            episodes.removeIf(episode -> !onlyEpisodeIds.contains(episode.id()));
+        }
         totalEpisodes = episodes.size();
 
+        if (!abortRequested.get()) {
+            write(() -> db.runInTransaction(() -> {
+                for (EpisodeMetadata episode : episodes) {
+                    downloadJobDao.insert(DownloadJob.createQueued(DownloadJob.KIND_EPISODE, episode.id()));
+                }
+            }));
+        }
+
         updateProgress(completedPodcasts);
         updateEpisodeProgress(0, totalEpisodes);
 
         downloadAudioFiles(episodes);
 
         final boolean wasAborted = abortRequested.get();
+        if (userAbortRequested.get()) {
+            // A deliberate abort ends the run; only an unexpected death should be resumed
+            write(downloadJobDao::deleteUnfinished);
+        }
         isDownloading.set(false);
 
+        if (!wasAborted) {
+            new HistoryCompactor(this).compact();
+        }
+
         mainHandler.post(() -> {
             updateStatus(wasAborted ? "Download aborted" : "Download complete");
             dismissDownloadNotification();
@@ -211,16 +330,21 @@ public class DownloadService extends Service {
                 updateStatus("Downloading podcast: " + currentTitle);
                 showDownloadNotification(currentTitle);
                 appendLog("Fetching: " + currentTitle + ": " + podcast.url());
+                updateJobState(DownloadJob.KIND_PODCAST, podcast.id(), DownloadJob.STATE_RUNNING, null);
 
                 String downloadPodcastResult = podcastDownloader.downloadPodcast(podcast);
                 appendLog(downloadPodcastResult);
 
+                if (!abortRequested.get()) {
+                    updateJobState(DownloadJob.KIND_PODCAST, podcast.id(), DownloadJob.STATE_DONE, null);
+                }
                 completedPodcasts++;
                 updatePodcastProgress(completedPodcasts, totalPodcasts);
                 updateProgress(completedPodcasts);
             } catch (Exception e) {
                 Log.e(TAG, "Error downloading " + podcast.url(), e);
                 appendLog("Error for " + podcast.url() + ": " + e.getMessage());
+                updateJobState(DownloadJob.KIND_PODCAST, podcast.id(), DownloadJob.STATE_FAILED, e.getMessage());
             }
         }
     }
@@ -233,28 +357,51 @@ public class DownloadService extends Service {
             }
 
             currentTitle = episode.toString();
+            currentEpisodeId = episode.id();
             showDownloadNotification(currentTitle);
             appendLog("Downloading: " + currentTitle);
+            updateJobState(DownloadJob.KIND_EPISODE, episode.id(), DownloadJob.STATE_RUNNING, null);
 
             try {
                 EpisodeMetadata updatedEpisode = audioFileDownloader.download(episode);
 
                 if (updatedEpisode.contentLength() > 0 && !abortRequested.get()) {
-                    episodeMetadataDao.update(updatedEpisode);
+                    long now = System.currentTimeMillis();
+                    write(() -> db.runInTransaction(() -> {
+                        episodeMetadataDao.update(updatedEpisode);
+                        downloadJobDao.updateBytesDone(DownloadJob.KIND_EPISODE, episode.id(),
+                                updatedEpisode.contentLength(), now);
+                        downloadJobDao.updateState(DownloadJob.KIND_EPISODE, episode.id(),
+                                DownloadJob.STATE_DONE, null, now);
+                    }));
                     completedEpisodes++;
                     updateEpisodeProgress(completedEpisodes, totalEpisodes);
                     updateProgress(totalPodcasts + completedEpisodes);
-                } else {
+                } else if (!abortRequested.get()) {
                     appendLog("Failed to download: " + currentTitle);
+                    updateJobState(DownloadJob.KIND_EPISODE, episode.id(), DownloadJob.STATE_FAILED,
+                            audioFileDownloader.getFailureReason());
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error downloading file " + episode.audioAbsolutePath(), e);
                 appendLog("Error for " + currentTitle + ": " + e.getMessage());
+                updateJobState(DownloadJob.KIND_EPISODE, episode.id(), DownloadJob.STATE_FAILED, e.getMessage());
             }
         }
+        currentEpisodeId = -1;
         stopDownloadUpdates();
     }
 
+    private void updateJobState(int kind, long targetId, int state, String failureReason) {
+        long now = System.currentTimeMillis();
+        write(() -> downloadJobDao.updateState(kind, targetId, state, failureReason, now));
+    }
+
+    /* Download thread writes queue behind playback saves on the writer, and are done before the next read */
+    private static void write(@NonNull Runnable command) {
+        AppDatabase.executeWriteAndWait(DbExecutors.PRIORITY_BULK, command);
+    }
+
     private void updateStatus(String status) {
         currentStatus = status;
         mainHandler.post(() -> {
@@ -304,7 +451,20 @@ public class DownloadService extends Service {
         });
     }
 
-    private void showDownloadNotification(String title) {
+    /* False if Android refused to put the service in the foreground, which it may from the background */
+    private boolean showDownloadNotification(String title) {
+        Notification notification = buildDownloadNotification(title);
+
+        if (!isDownloading.get()) {
+            notificationManager.notify(DOWNLOAD_NOTIFICATION_ID, notification);
+            return true;
+        }
+
+        return startForegroundQuietly(notification);
+    }
+
+    @NonNull
+    private Notification buildDownloadNotification(String title) {
         Intent intent = new Intent(this, DownloadActivity.class);
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
         int flags = PendingIntent.FLAG_UPDATE_CURRENT;
@@ -317,7 +477,7 @@ public class DownloadService extends Service {
         int maxProgress = totalPodcasts + totalEpisodes;
         int progressPercent = maxProgress > 0 ? (currentProgress * 100 / maxProgress) : 0;
 
-        Notification notification = new NotificationCompat.Builder(this, DOWNLOAD_CHANNEL_ID)
+        return new NotificationCompat.Builder(this, DOWNLOAD_CHANNEL_ID)
                 .setContentTitle(notificationTitle)
                 .setContentText("Download in progress...")
                 .setSmallIcon(R.mipmap.ic_launcher)
@@ -325,11 +485,16 @@ public class DownloadService extends Service {
                 .setOngoing(true)
                 .setContentIntent(pendingIntent)
                 .build();
+    }
 
-        if (isDownloading.get()) {
+    private boolean startForegroundQuietly(@NonNull Notification notification) {
+        try {
             startForeground(DOWNLOAD_NOTIFICATION_ID, notification);
-        } else {
-            notificationManager.notify(DOWNLOAD_NOTIFICATION_ID, notification);
+            return true;
+        } catch (IllegalStateException e) {
+            // ForegroundServiceStartNotAllowedException on API 31+
+            Log.w(TAG, "Not allowed to start in the foreground", e);
+            return false;
         }
     }
 
@@ -348,8 +513,9 @@ public class DownloadService extends Service {
     }
 
     private void guesstimateInitialTotalDownloads(List<PodcastMetadata> podcasts) {
+        AppSettings settings = CcrApplication.getSettings(this);
         for (PodcastMetadata podcast : podcasts) {
-            int maxDownloads = podcast.getCalculatedMaxDownloads(this);
+            int maxDownloads = podcast.getCalculatedMaxDownloads(settings);
             totalEpisodes += maxDownloads == Integer.MAX_VALUE ? 10 : maxDownloads;
         }
     }
@@ -362,12 +528,24 @@ public class DownloadService extends Service {
                         currentTitle,
                         audioFileDownloader.getCurrentBytes() / 1024);
                 updateStatus(status);
+                saveBytesDone();
                 mainHandler.postDelayed(this, 1000);
             }
         };
         mainHandler.post(downloadRunnable);
     }
 
+    /* Per-episode progress for the job row, throttled to the once-a-second status update */
+    private void saveBytesDone() {
+        long episodeId = currentEpisodeId;
+        if (episodeId < 0) {
+            return;
+        }
+        long bytesDone = audioFileDownloader.getCurrentBytes();
+        AppDatabase.executeWrite(DbExecutors.PRIORITY_BULK, () -> downloadJobDao.updateBytesDone(
+                DownloadJob.KIND_EPISODE, episodeId, bytesDone, System.currentTimeMillis()));
+    }
+
     private void stopDownloadUpdates() {
         if (downloadRunnable != null) {
             mainHandler.removeCallbacks(downloadRunnable);
@@ -0,0 +1,46 @@
+package com.weinmann.ccr.services;
+
+import androidx.annotation.NonNull;
+
+import com.weinmann.ccr.records.EpisodeSummary;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* Ids added, removed or changed (ignoring playback position) between two emissions of the active episode list */
+record EpisodeListDiff(@NonNull Set<Long> added, @NonNull Set<Long> removed, @NonNull Set<Long> changed) {
+
+    @NonNull
+    static EpisodeListDiff between(@NonNull List<EpisodeSummary> previousList,
+                                   @NonNull List<EpisodeSummary> incoming) {
+        Map<Long, EpisodeSummary> previous = new HashMap<>();
+        for (EpisodeSummary episode : previousList) {
+            previous.put(episode.id(), episode);
+        }
+
+        Set<Long> added = new HashSet<>();
+        Set<Long> changed = new HashSet<>();
+        Set<Long> removed = new HashSet<>(previous.keySet());
+
+        for (EpisodeSummary episode : incoming) {
+            EpisodeSummary old = previous.get(episode.id());
+            if (old == null) {
+                added.add(episode.id());
+            } else {
+                removed.remove(episode.id());
+                if (!old.sameListingAs(episode)) {
+                    changed.add(episode.id());
+                }
+            }
+        }
+
+        return new EpisodeListDiff(added, removed, changed);
+    }
+
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+}
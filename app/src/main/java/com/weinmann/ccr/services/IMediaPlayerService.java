@@ -1,28 +1,44 @@
 package com.weinmann.ccr.services;
 
-import com.weinmann.ccr.records.EpisodeMetadata;
+import androidx.annotation.NonNull;
 
+/*
+ * Safe to call from any thread. Commands are queued to the playback thread and run in the
+ * order they were sent; what they lead to comes back through a PlaybackListener.
+ */
 public interface IMediaPlayerService {
 
+    /* Called on the main thread */
+    interface PlaybackListener {
+        /* The episode, its place in the queue or the play state changed */
+        void onStateChanged(@NonNull PlaybackState state);
+
+        /* Ticks once a second while playing, and after every seek or state change */
+        void onPositionChanged(int position, int duration);
+    }
+
     void playPause(boolean shouldPlay);
 
-    void setEpisodeIndex(int index, boolean shouldPlay);
+    void togglePlayPause();
 
-    void seekBackward();
+    /* Previous and next keep playing if playing, and stay put at either end of the queue */
+    void skipToPrevious();
 
-    void seekForward();
+    void skipToNext();
 
-    void seekTo(int position);
+    void setEpisodeIndex(int index, boolean shouldPlay);
 
-    boolean isPlaying();
+    /* Returns false if the episode is not in the playback queue */
+    boolean playEpisodeById(long id);
 
-    int getCurrentPosition();
+    void seekBackward();
 
-    int getDuration();
+    void seekForward();
 
-    EpisodeMetadata getCurrentEpisode();
+    void seekTo(int position);
 
-    int getCurrentEpisodeIndex();
+    /* Delivers the current state and position straight away; remove the listener when no longer visible */
+    void addPlaybackListener(@NonNull PlaybackListener listener);
 
-    int getEpisodeCount();
+    void removePlaybackListener(@NonNull PlaybackListener listener);
 }
@@ -0,0 +1,184 @@
+package com.weinmann.ccr.services;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.DataReader;
+import androidx.media3.common.Format;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.extractor.DefaultExtractorsFactory;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.ExtractorInput;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorsFactory;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.SeekPoint;
+import androidx.media3.extractor.TrackOutput;
+import androidx.media3.extractor.mp3.Mp3Extractor;
+
+import com.weinmann.ccr.Mp3SeekIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Mp3Extractor with its estimated seek map swapped for the Mp3SeekIndex written at download
+ * time. After a seek Mp3Extractor still stamps samples from its own estimate of the time at
+ * that byte offset, so the first sample is pinned to the indexed frame time and the rest
+ * follow from there.
+ */
+@OptIn(markerClass = UnstableApi.class)
+class IndexedMp3Extractor implements Extractor {
+    private final Mp3Extractor delegate = new Mp3Extractor();
+    private final Mp3SeekIndex index;
+
+    private long timeOffsetUs = 0;
+    // Exact time of the frame the last seek landed on, until its first sample is written
+    private long pinnedTimeUs = C.TIME_UNSET;
+
+    IndexedMp3Extractor(@NonNull Mp3SeekIndex index) {
+        this.index = index;
+    }
+
+    /* Uses the index for downloaded files that have one, the default extractors otherwise */
+    static class Factory implements ExtractorsFactory {
+        private final ExtractorsFactory fallback = new DefaultExtractorsFactory();
+
+        @NonNull
+        @Override
+        public Extractor[] createExtractors() {
+            return fallback.createExtractors();
+        }
+
+        @NonNull
+        @Override
+        public Extractor[] createExtractors(@NonNull Uri uri, @NonNull Map<String, List<String>> responseHeaders) {
+            boolean isLocal = uri.getScheme() == null || "file".equals(uri.getScheme());
+            Mp3SeekIndex index = isLocal && uri.getPath() != null ? Mp3SeekIndex.read(new File(uri.getPath())) : null;
+            if (index == null) {
+                return fallback.createExtractors(uri, responseHeaders);
+            }
+            return new Extractor[]{new IndexedMp3Extractor(index)};
+        }
+    }
+
+    @Override
+    public boolean sniff(@NonNull ExtractorInput input) throws IOException {
+        return delegate.sniff(input);
+    }
+
+    @Override
+    public void init(@NonNull ExtractorOutput output) {
+        delegate.init(new IndexedOutput(output));
+    }
+
+    @Override
+    public int read(@NonNull ExtractorInput input, @NonNull PositionHolder seekPosition) throws IOException {
+        return delegate.read(input, seekPosition);
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {
+        delegate.seek(position, timeUs);
+        long indexedTimeUs = index.getTimeUsAtPosition(position);
+        if (indexedTimeUs == Mp3SeekIndex.NOT_INDEXED) {
+            pinnedTimeUs = C.TIME_UNSET;
+            timeOffsetUs = 0;
+        } else {
+            pinnedTimeUs = indexedTimeUs;
+        }
+    }
+
+    @Override
+    public void release() {
+        delegate.release();
+    }
+
+    private class IndexedOutput implements ExtractorOutput {
+        private final ExtractorOutput output;
+
+        IndexedOutput(@NonNull ExtractorOutput output) {
+            this.output = output;
+        }
+
+        @NonNull
+        @Override
+        public TrackOutput track(int id, int type) {
+            return new PinnedTrackOutput(output.track(id, type));
+        }
+
+        @Override
+        public void endTracks() {
+            output.endTracks();
+        }
+
+        @Override
+        public void seekMap(@NonNull SeekMap ignored) {
+            output.seekMap(new IndexSeekMap());
+        }
+    }
+
+    private class IndexSeekMap implements SeekMap {
+        @Override
+        public boolean isSeekable() {
+            return true;
+        }
+
+        @Override
+        public long getDurationUs() {
+            return index.getDurationUs();
+        }
+
+        @NonNull
+        @Override
+        public SeekPoints getSeekPoints(long timeUs) {
+            int i = index.indexFor(timeUs);
+            SeekPoint point = new SeekPoint(index.getTimeUs(i), index.getPosition(i));
+            if (point.timeUs == timeUs || i + 1 >= index.size()) {
+                return new SeekPoints(point);
+            }
+            return new SeekPoints(point, new SeekPoint(index.getTimeUs(i + 1), index.getPosition(i + 1)));
+        }
+    }
+
+    private class PinnedTrackOutput implements TrackOutput {
+        private final TrackOutput output;
+
+        PinnedTrackOutput(@NonNull TrackOutput output) {
+            this.output = output;
+        }
+
+        @Override
+        public void format(@NonNull Format format) {
+            output.format(format);
+        }
+
+        @Override
+        public int sampleData(@NonNull DataReader input, int length, boolean allowEndOfInput,
+                              @SampleDataPart int sampleDataPart) throws IOException {
+            return output.sampleData(input, length, allowEndOfInput, sampleDataPart);
+        }
+
+        @Override
+        public void sampleData(@NonNull ParsableByteArray data, int length, @SampleDataPart int sampleDataPart) {
+            output.sampleData(data, length, sampleDataPart);
+        }
+
+        @Override
+        public void sampleMetadata(long timeUs, @C.BufferFlags int flags, int size, int offset,
+                                   @Nullable CryptoData cryptoData) {
+            if (pinnedTimeUs != C.TIME_UNSET) {
+                timeOffsetUs = pinnedTimeUs - timeUs;
+                pinnedTimeUs = C.TIME_UNSET;
+            }
+            output.sampleMetadata(timeUs + timeOffsetUs, flags, size, offset, cryptoData);
+        }
+    }
+}
@@ -1,66 +1,111 @@
 package com.weinmann.ccr.services;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
-import android.support.v4.media.session.MediaSessionCompat;
+import android.os.Bundle;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
 import androidx.core.app.NotificationCompat;
+import androidx.core.graphics.drawable.IconCompat;
+import androidx.media3.common.MediaMetadata;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.session.CommandButton;
+import androidx.media3.session.MediaNotification;
+import androidx.media3.session.MediaSession;
+import androidx.media3.session.MediaStyleNotificationHelper;
 
+import com.google.common.collect.ImmutableList;
 import com.weinmann.ccr.MainActivity;
 import com.weinmann.ccr.R;
 
 import org.jetbrains.annotations.Contract;
 
+import java.util.Objects;
 
-public class MediaNotifier {
+/*
+ * Builds the playback notification from the session's player; MediaSessionService decides when
+ * to post it. Controller events ask for a notification far more often than what it shows
+ * changes, so the intents and actions are made once per session, one builder is reused, and a
+ * request with the same title, artist and play state gets the previous notification back.
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class MediaNotifier implements MediaNotification.Provider {
     public static final String CHANNEL_ID = "media_player_channel";
     public static final int NOTIFICATION_ID = 1;
     private final Context context;
     private boolean isChannelCreated = false;
 
+    private PendingIntent activityPendingIntent;
+    private PendingIntent stopPendingIntent;
+
+    // Built for this session; the session owns the intents behind the media actions
+    private MediaSession actionsSession;
+    private NotificationCompat.Action previousAction;
+    private NotificationCompat.Action playAction;
+    private NotificationCompat.Action pauseAction;
+    private NotificationCompat.Action nextAction;
+    private NotificationCompat.Action stopAction;
+    private NotificationCompat.Builder builder;
+
+    // What the last notification showed
+    private MediaNotification lastNotification;
+    private CharSequence lastTitle;
+    private CharSequence lastArtist;
+    private boolean lastIsPlaying;
+
     @Contract(pure = true)
     public MediaNotifier(Context context) {
         this.context = context;
     }
 
     @NonNull
-    public Notification createNotification(boolean isPlaying, MediaSessionCompat.Token mediaSessionToken) {
+    @Override
+    public MediaNotification createNotification(@NonNull MediaSession mediaSession,
+                                                @NonNull ImmutableList<CommandButton> mediaButtonPreferences,
+                                                @NonNull MediaNotification.ActionFactory actionFactory,
+                                                @NonNull Callback onNotificationChangedCallback) {
         if (!isChannelCreated) {
             createNotificationChannel();
         }
-        PendingIntent notificationPendingIntent = createActivityPendingIntent();
-        PendingIntent playPausePendingIntent = createPendingIntent("ACTION_PLAY_PAUSE", 0);
-        PendingIntent stopPendingIntent = createPendingIntent("ACTION_STOP", 1);
-        PendingIntent previousPendingIntent = createPendingIntent("ACTION_PREVIOUS", 3);
-        PendingIntent nextPendingIntent = createPendingIntent("ACTION_NEXT", 2);
-
-        int playPauseIcon = isPlaying ? android.R.drawable.ic_media_pause : android.R.drawable.ic_media_play;
-        String playPauseText = isPlaying ? context.getString(R.string.pause) : context.getString(R.string.play);
-        
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
-                .setSmallIcon(android.R.drawable.ic_media_play)
-                .setContentIntent(notificationPendingIntent)
-                .addAction(android.R.drawable.ic_media_previous, context.getString(R.string.previous), previousPendingIntent)
-                .addAction(playPauseIcon, playPauseText, playPausePendingIntent)
-                .addAction(android.R.drawable.ic_media_next, context.getString(R.string.next), nextPendingIntent)
-                .addAction(android.R.drawable.ic_menu_close_clear_cancel, context.getString(R.string.exit), stopPendingIntent)
-                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
-                        .setMediaSession(mediaSessionToken)
-                        .setShowActionsInCompactView(0, 1, 2))
-                .setOnlyAlertOnce(true);
+        if (mediaSession != actionsSession) {
+            createBuilder(mediaSession, actionFactory);
+        }
+
+        Player player = mediaSession.getPlayer();
+        MediaMetadata metadata = player.getMediaMetadata();
+        boolean isPlaying = player.getPlayWhenReady();
+
+        if (lastNotification != null
+                && isPlaying == lastIsPlaying
+                && Objects.equals(metadata.title, lastTitle)
+                && Objects.equals(metadata.artist, lastArtist)) {
+            return lastNotification;
+        }
+
+        builder.clearActions()
+                .setContentTitle(metadata.title)
+                .setContentText(metadata.artist)
+                .addAction(previousAction)
+                .addAction(isPlaying ? pauseAction : playAction)
+                .addAction(nextAction)
+                .addAction(stopAction);
 
-        return builder.build();
+        lastTitle = metadata.title;
+        lastArtist = metadata.artist;
+        lastIsPlaying = isPlaying;
+        lastNotification = new MediaNotification(NOTIFICATION_ID, builder.build());
+        return lastNotification;
     }
 
-    public void updateNotification(boolean isPlaying, MediaSessionCompat.Token token) {
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        notificationManager.notify(NOTIFICATION_ID, createNotification(isPlaying, token));
+    @Override
+    public boolean handleCustomCommand(@NonNull MediaSession session, @NonNull String action, @NonNull Bundle extras) {
+        return false;
     }
 
     private void createNotificationChannel() {
@@ -75,6 +120,42 @@ public class MediaNotifier {
         isChannelCreated = true;
     }
 
+    private void createBuilder(@NonNull MediaSession mediaSession, @NonNull MediaNotification.ActionFactory actionFactory) {
+        if (activityPendingIntent == null) {
+            activityPendingIntent = createActivityPendingIntent();
+            stopPendingIntent = createStopPendingIntent();
+        }
+
+        previousAction = actionFactory.createMediaAction(mediaSession,
+                IconCompat.createWithResource(context, android.R.drawable.ic_media_previous),
+                context.getString(R.string.previous),
+                Player.COMMAND_SEEK_TO_PREVIOUS);
+        playAction = actionFactory.createMediaAction(mediaSession,
+                IconCompat.createWithResource(context, android.R.drawable.ic_media_play),
+                context.getString(R.string.play),
+                Player.COMMAND_PLAY_PAUSE);
+        pauseAction = actionFactory.createMediaAction(mediaSession,
+                IconCompat.createWithResource(context, android.R.drawable.ic_media_pause),
+                context.getString(R.string.pause),
+                Player.COMMAND_PLAY_PAUSE);
+        nextAction = actionFactory.createMediaAction(mediaSession,
+                IconCompat.createWithResource(context, android.R.drawable.ic_media_next),
+                context.getString(R.string.next),
+                Player.COMMAND_SEEK_TO_NEXT);
+        stopAction = new NotificationCompat.Action(
+                android.R.drawable.ic_menu_close_clear_cancel, context.getString(R.string.exit), stopPendingIntent);
+
+        builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_media_play)
+                .setContentIntent(activityPendingIntent)
+                .setStyle(new MediaStyleNotificationHelper.MediaStyle(mediaSession)
+                        .setShowActionsInCompactView(0, 1, 2))
+                .setOnlyAlertOnce(true);
+
+        actionsSession = mediaSession;
+        lastNotification = null;
+    }
+
     private PendingIntent createActivityPendingIntent() {
         Intent intent = new Intent(context, MainActivity.class);
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
@@ -85,16 +166,14 @@ public class MediaNotifier {
         return PendingIntent.getActivity(context, 0, intent, flags);
     }
 
-    private PendingIntent createPendingIntent(String action, int requestCode) {
+    private PendingIntent createStopPendingIntent() {
         int flags = PendingIntent.FLAG_UPDATE_CURRENT;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             flags |= PendingIntent.FLAG_IMMUTABLE;
         }
 
         Intent intent = new Intent(context, MediaPlayerService.class);
-        if (action != null) {
-            intent.setAction(action);
-        }
-        return PendingIntent.getService(context, requestCode, intent, flags);
+        intent.setAction(MediaPlayerService.ACTION_STOP);
+        return PendingIntent.getService(context, 1, intent, flags);
     }
 }
@@ -1,44 +1,108 @@
 package com.weinmann.ccr.services;
 
-import android.app.Service;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.support.v4.media.MediaMetadataCompat;
-import android.support.v4.media.session.MediaSessionCompat;
-import android.support.v4.media.session.PlaybackStateCompat;
+import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.Observer;
+import androidx.media3.common.C;
+import androidx.media3.common.ForwardingPlayer;
 import androidx.media3.common.MediaItem;
+import androidx.media3.common.MediaMetadata;
+import androidx.media3.common.PlaybackException;
 import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
 import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
+import androidx.media3.session.MediaSession;
+import androidx.media3.session.MediaSessionService;
 
 import com.weinmann.ccr.CcrApplication;
-import com.weinmann.ccr.CurrentItemList;
+import com.weinmann.ccr.DownloadedFiles;
 import com.weinmann.ccr.EpisodeDeleter;
+import com.weinmann.ccr.Util;
 import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.EpisodeDescriptionDao;
 import com.weinmann.ccr.db.EpisodeMetadataDao;
-import com.weinmann.ccr.records.EpisodeMetadata;
+import com.weinmann.ccr.records.EpisodeSummary;
 
-import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-
-public class MediaPlayerService extends Service implements IMediaPlayerService {
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * The ExoPlayer is the single source of truth for playback state: the Media3 session
+ * publishes it to controllers (notification, Bluetooth, car) and MediaSessionService keeps
+ * the notification and foreground state in step with it. The app's own screens bind
+ * locally through IMediaPlayerService.
+ *
+ * The player, its session, the queue and everything else that drives them live on one
+ * playback thread, so a busy UI and player control can't stall each other. Main-thread
+ * callbacks (LiveData, file index) and IMediaPlayerService commands are posted to it.
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class MediaPlayerService extends MediaSessionService implements IMediaPlayerService {
     private static final String TAG = "MediaPlayerService";
+    public static final String ACTION_STOP = "ACTION_STOP";
+    // While playing, checkpoint the position this often so a killed process loses little
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 15000;
+    private static final long POSITION_TICK_MILLIS = 1000;
 
     private final IBinder binder = new LocalBinder();
-    private final MediaNotifier mediaNotifier = new MediaNotifier(this);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread playbackThread;
+    private Handler playbackHandler;
 
+    // One player for the service's lifetime; the queue is its playlist, so transitions are gapless
     private ExoPlayer player;
 
-    private MediaSessionCompat mediaSession;
+    private MediaSession mediaSession;
+    // Counted down on the playback thread once the player and session exist
+    private final CountDownLatch sessionCreated = new CountDownLatch(1);
+    // Main thread only; stops the checkpoint recovery callback from observing after onDestroy
+    private boolean destroyed;
 
     private EpisodeMetadataDao episodeMetadataDao;
-
-    private Observer<List<EpisodeMetadata>> activeEpisodesObserver;
-    private final CurrentItemList<EpisodeMetadata> episodes = new CurrentItemList<>();
+    private EpisodeDescriptionDao episodeDescriptionDao;
+    private PlaybackPositionStore positionStore;
+    private PlaybackStartupTracer startupTracer;
+
+    private LiveData<List<EpisodeSummary>> activeEpisodes;
+    private Observer<List<EpisodeSummary>> activeEpisodesObserver;
+    private final PlaybackQueue episodes = new PlaybackQueue();
+    // Last emission of the active list, including episodes whose file is missing, to diff the next one against
+    private List<EpisodeSummary> listedEpisodes = List.of();
+    private DownloadedFiles downloadedFiles;
+    private final Runnable downloadedFilesListener = () -> playbackHandler.post(this::onDownloadedFilesChanged);
+
+    private final Runnable checkpointRunnable = this::checkpointPosition;
+
+    // Visible screens only; position ticks run while any are registered and the player is playing
+    private final List<PlaybackListener> playbackListeners = new CopyOnWriteArrayList<>();
+    private PlaybackState publishedState;
+    // Written on the playback thread after each queue rebuild, so playEpisodeById can answer at once
+    private volatile Set<Long> queuedIds = Set.of();
+    private final Runnable positionTickRunnable = this::tickPosition;
+
+    // Descriptions loaded so far this session, keyed by episode id; added to the media item metadata
+    private final Map<Long, String> descriptions = new HashMap<>();
 
     public class LocalBinder extends Binder {
         public MediaPlayerService getService() {
@@ -50,350 +114,674 @@ public class MediaPlayerService extends Service implements IMediaPlayerService {
     public void onCreate() {
         super.onCreate();
 
-        initializeMediaSession();
+        playbackThread = new HandlerThread("playback", Process.THREAD_PRIORITY_AUDIO);
+        playbackThread.start();
+        playbackHandler = new Handler(playbackThread.getLooper());
+
+        startupTracer = PlaybackStartupTracer.getInstance(this);
         AppDatabase db = AppDatabase.getInstance(getApplicationContext());
         episodeMetadataDao = db.episodeMetadataDao();
+        episodeDescriptionDao = db.episodeDescriptionDao();
+        positionStore = new PlaybackPositionStore(this, playbackThread.getLooper());
+        downloadedFiles = DownloadedFiles.getInstance(this);
 
-        // Create observer only once
-        activeEpisodesObserver = list -> {
-            episodes.clear();
-            episodes.addAll(list);
-            onLoadEpisodes();
-            Log.d("MediaPlayerService",
-                    "Active episodes updated: " + list.size());
-        };
-
-        // Listen for ANY DB change affecting isActive
-        episodeMetadataDao.getObservable().observeForever(activeEpisodesObserver);
+        // Commands posted meanwhile queue up behind this; controllers wait for it in onGetSession
+        playbackHandler.post(() -> {
+            initializePlayer();
+            initializeMediaSession();
+            sessionCreated.countDown();
+        });
+        setMediaNotificationProvider(new MediaNotifier(this));
+        downloadedFiles.addListener(downloadedFilesListener);
+
+        // Create observer only once; LiveData delivers on the main thread
+        activeEpisodesObserver = list -> playbackHandler.post(() -> onActiveEpisodesChanged(list));
+
+        // Listen for ANY DB change affecting isActive, but not for our own position saves
+        activeEpisodes = Util.distinctListUntilChanged(
+                episodeMetadataDao.getObservableSummaries(),
+                EpisodeSummary::sameListingAs);
+        // Start observing only once positions from a previous crash are back in episode_metadata
+        positionStore.recoverCheckpoints(() -> mainHandler.post(() -> {
+            if (!destroyed) {
+                activeEpisodes.observeForever(activeEpisodesObserver);
+            }
+        }));
     }
 
     @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null) {
-            String action = intent.getAction();
-            if ("ACTION_PLAY_PAUSE".equals(action)) {
-                playPause(!isPlaying());
-            } else if ("ACTION_PREVIOUS".equals(action)) {
-                setEpisodeIndex(episodes.getCurrentIndex() - 1, isPlaying());
-            } else if ("ACTION_NEXT".equals(action)) {
-                setEpisodeIndex(episodes.getCurrentIndex() + 1, isPlaying());
-            } else if ("ACTION_STOP".equals(action)) {
+    public int onStartCommand(@Nullable Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            playbackHandler.post(() -> {
+                stopPlayback();
                 stopSelf();
-                return START_NOT_STICKY;
-            }
+            });
+            return START_NOT_STICKY;
+        }
+        // Media button intents are handled by the session
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    @Nullable
+    @Override
+    public MediaSession onGetSession(@NonNull MediaSession.ControllerInfo controllerInfo) {
+        // Only a controller that connects while onCreate's setup is still running waits here
+        try {
+            sessionCreated.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        startForeground(MediaNotifier.NOTIFICATION_ID, mediaNotifier.createNotification(isPlaying(), mediaSession.getSessionToken()));
-        return START_STICKY;
+        return mediaSession;
     }
 
+    @Nullable
     @Override
-    public IBinder onBind(Intent intent) {
-        return binder;
+    public IBinder onBind(@Nullable Intent intent) {
+        // Controllers bind with a session action; the app's screens bind with a plain intent
+        IBinder sessionBinder = super.onBind(intent);
+        return sessionBinder != null ? sessionBinder : binder;
     }
 
     @Override
     public void playPause(boolean shouldPlay) {
-        if (shouldPlay) {
-            play();
-        } else {
-            pause();
-        }
+        long requestedNanos = System.nanoTime();
+        playbackHandler.post(() -> applyPlayPause(shouldPlay, requestedNanos));
+    }
+
+    @Override
+    public void togglePlayPause() {
+        long requestedNanos = System.nanoTime();
+        playbackHandler.post(() -> applyPlayPause(!player.isPlaying(), requestedNanos));
+    }
+
+    @Override
+    public void skipToPrevious() {
+        playbackHandler.post(() -> moveToIndex(currentIndex() - 1, player.isPlaying()));
+    }
+
+    @Override
+    public void skipToNext() {
+        playbackHandler.post(() -> moveToIndex(currentIndex() + 1, player.isPlaying()));
     }
 
     @Override
     public void setEpisodeIndex(int index, boolean shouldPlay) {
-        if (index == getCurrentEpisodeIndex()) {
-            playPause(shouldPlay);
-            return;
-        }
+        playbackHandler.post(() -> moveToIndex(index, shouldPlay));
+    }
 
-        killMediaPlayer();
-        assert (player == null);
+    @Override
+    public boolean playEpisodeById(long id) {
+        if (!queuedIds.contains(id)) return false;
+
+        // Taken here so the trace includes the wait for the playback thread
+        long requestedNanos = System.nanoTime();
+        playbackHandler.post(() -> {
+            // The queue may have changed since the check; then there is nothing to play
+            int index = episodes.indexOfId(id);
+            if (index < 0) return;
+
+            startupTracer.begin(PlaybackStartupTracer.TRIGGER_EPISODE_TAP, requestedNanos);
+            moveToIndex(index, true);
+        });
+        return true;
+    }
 
-        episodes.setCurrentIndex(index);
+    @Override
+    public void seekBackward() {
+        int seconds = CcrApplication.getSettings(this).rewindSeconds();
+        playbackHandler.post(() -> seekToPosition(currentPosition() - seconds * 1000));
+    }
 
-        if (getCurrentEpisode() != null) {
-            SharedPreferences prefs = getSharedPreferences(CcrApplication.PREFS_NAME, MODE_PRIVATE);
-            prefs.edit().putLong(CcrApplication.KEY_LAST_EPISODE_ID, getCurrentEpisode().id()).apply();
-            updateMediaSessionMetadata();
+    @Override
+    public void seekForward() {
+        int seconds = CcrApplication.getSettings(this).forwardSeconds();
+        playbackHandler.post(() -> seekToPosition(currentPosition() + seconds * 1000));
+    }
 
-            if (shouldPlay) {
-                if (getCurrentEpisode().currentPos() >= getCurrentEpisode().duration()) {
-                    updateAndSaveCurrentEpisodePosition(0); // because we specifically want to play this episode again
-                }
-            }
+    @Override
+    public void seekTo(int position) {
+        playbackHandler.post(() -> seekToPosition(position));
+    }
 
-            playPause(shouldPlay);
-        }
+    @Override
+    public void addPlaybackListener(@NonNull PlaybackListener listener) {
+        playbackHandler.post(() -> {
+            playbackListeners.add(listener);
+            PlaybackState state = currentState();
+            int position = currentPosition();
+            int duration = currentDuration();
+            publishedState = state;
+            mainHandler.post(() -> {
+                listener.onStateChanged(state);
+                listener.onPositionChanged(position, duration);
+            });
+            updatePositionTicks();
+        });
     }
 
     @Override
-    public boolean isPlaying() {
-        return player != null && player.isPlaying();
+    public void removePlaybackListener(@NonNull PlaybackListener listener) {
+        playbackHandler.post(() -> {
+            playbackListeners.remove(listener);
+            updatePositionTicks();
+        });
     }
 
     @Override
-    public int getCurrentPosition() {
-        if (player != null) {
+    public void onDestroy() {
+        destroyed = true;
+        if (activeEpisodesObserver != null) {
+            activeEpisodes.removeObserver(activeEpisodesObserver);
+        }
+        downloadedFiles.removeListener(downloadedFilesListener);
+        playbackListeners.clear();
+
+        // Runs after what is already queued, onCreate's setup included; the session must be gone before super.onDestroy()
+        runOnPlaybackThreadAndWait(() -> {
+            playbackHandler.removeCallbacks(checkpointRunnable);
+            playbackHandler.removeCallbacks(positionTickRunnable);
+            stopPlayback();
+            mediaSession.release();
+            player.release();
+        });
+        playbackThread.quitSafely();
+
+        super.onDestroy();
+    }
+
+    private void runOnPlaybackThreadAndWait(@NonNull Runnable task) {
+        CountDownLatch done = new CountDownLatch(1);
+        playbackHandler.post(() -> {
+            task.run();
+            done.countDown();
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Nullable
+    private EpisodeSummary currentEpisode() {
+        return episodes.getCurrentItem();
+    }
+
+    private int currentIndex() {
+        return episodes.getCurrentIndex();
+    }
+
+    private int currentPosition() {
+        if (player.getMediaItemCount() > 0) {
             long pos = player.getCurrentPosition();
             return (pos > 0) ? (int) pos : 0;
         }
 
-        if (getCurrentEpisode() != null) {
-            return getCurrentEpisode().currentPos();
+        if (currentEpisode() != null) {
+            return currentEpisode().currentPos();
         }
 
         return 0;
     }
 
-    @Override
-    public int getDuration() {
-        if (player != null) {
-            long duration = player.getDuration();
-            return (duration > 0) ? (int) duration : 0;
+    private int currentDuration() {
+        long duration = player.getDuration();
+        if (duration > 0) {
+            return (int) duration;
         }
 
-        if (getCurrentEpisode() != null) return getCurrentEpisode().duration();
+        if (currentEpisode() != null) return currentEpisode().duration();
         return 0;
     }
 
-    @Override
-    public void seekBackward() {
-        SharedPreferences prefs = getSharedPreferences(CcrApplication.PREFS_NAME, MODE_PRIVATE);
-        int seconds = prefs.getInt(CcrApplication.KEY_REWIND_SECONDS, 30);
-
-        int newPosition = getCurrentPosition()  - (seconds * 1000);
-        seekTo(newPosition);
+    private void applyPlayPause(boolean shouldPlay) {
+        applyPlayPause(shouldPlay, System.nanoTime());
     }
 
-    @Override
-    public void seekForward() {
-        SharedPreferences prefs = getSharedPreferences(CcrApplication.PREFS_NAME, MODE_PRIVATE);
-        int seconds = prefs.getInt(CcrApplication.KEY_FORWARD_SECONDS, 30);
-
-        int newPosition = getCurrentPosition() + (seconds * 1000);
-        seekTo(newPosition);
+    /* requestedNanos is when the command was given, on the thread that gave it */
+    private void applyPlayPause(boolean shouldPlay, long requestedNanos) {
+        if (shouldPlay) {
+            play(requestedNanos);
+        } else {
+            pause();
+        }
     }
 
-    @Override
-    public void seekTo(int position) {
-        boolean wasPlaying = isPlaying();
-        if (position < 0) position = 0;
-        if (position >= getDuration()) position = getDuration() - 1;
+    private void moveToIndex(int index, boolean shouldPlay) {
+        if (episodes.isEmpty()) return;
 
-        if (player != null) {
-            player.seekTo(position);
-            updatePlaybackState();
-            mediaNotifier.updateNotification(isPlaying(), mediaSession.getSessionToken());
+        // Previous/next at either end of the queue stay on the end episode
+        index = Math.max(0, Math.min(index, episodes.size() - 1));
+        if (index == currentIndex()) {
+            applyPlayPause(shouldPlay);
+            return;
         }
 
-        updateAndSaveCurrentEpisodePosition(position);
-        playPause(wasPlaying);
-    }
+        stopPlayback();
+        startupTracer.mark(PlaybackStartupTracer.PHASE_STOP_PREVIOUS);
+        episodes.setCurrentIndex(index);
 
-    @Override
-    public EpisodeMetadata getCurrentEpisode() {
-        return episodes.getCurrentItem();
-    }
+        if (currentEpisode() != null) {
+            onCurrentEpisodeChanged();
 
-    @Override
-    public int getCurrentEpisodeIndex() {
-        return episodes.getCurrentIndex();
-    }
+            if (shouldPlay) {
+                if (currentEpisode().currentPos() >= currentEpisode().duration()) {
+                    updateAndSaveCurrentEpisodePosition(0); // because we specifically want to play this episode again
+                }
+            }
 
-    @Override
-    public int getEpisodeCount() {
-        return episodes.size();
+            // Jumps within the already prepared playlist rather than loading a new source
+            player.seekTo(currentIndex(), currentEpisode().currentPos());
+            startupTracer.mark(PlaybackStartupTracer.PHASE_SEEK);
+            applyPlayPause(shouldPlay);
+        }
+        publishState();
     }
 
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
+    private void seekToPosition(int position) {
+        boolean wasPlaying = player.isPlaying();
+        // An unknown duration is 0, so only a known one bounds the seek
+        int duration = currentDuration();
+        if (duration > 0 && position >= duration) position = duration - 1;
+        if (position < 0) position = 0;
 
-        if (activeEpisodesObserver != null) {
-            episodeMetadataDao.getObservable().removeObserver(activeEpisodesObserver);
+        if (player.getMediaItemCount() > 0) {
+            player.seekTo(position);
         }
 
-        killMediaPlayer();
+        updateAndSaveCurrentEpisodePosition(position);
+        applyPlayPause(wasPlaying);
+        publishPosition();
+    }
 
-        if (mediaSession != null) {
-            mediaSession.setActive(false);
-            mediaSession.release();
+    private void play(long requestedNanos) {
+        if (player.isPlaying() || currentEpisode() == null) {
+            // Nothing is going to start, so there is nothing to time
+            startupTracer.cancel();
+            return;
+        }
+        if (!startupTracer.isTracing()) {
+            startupTracer.begin(PlaybackStartupTracer.TRIGGER_PLAY, requestedNanos);
         }
-    }
 
-    private void play() {
-        if (isPlaying() || getCurrentEpisode() == null) return;
-        if (player == null) {
-            initializePlayer();
+        if (player.getPlaybackState() == Player.STATE_IDLE) {
+            player.prepare();
+            startupTracer.mark(PlaybackStartupTracer.PHASE_PREPARE);
+        } else if (player.getPlaybackState() == Player.STATE_ENDED) {
+            player.seekTo(currentIndex(), currentEpisode().currentPos());
+            startupTracer.mark(PlaybackStartupTracer.PHASE_SEEK);
         }
         float playbackSpeed = getPlaybackSpeed();
         player.setPlaybackSpeed(playbackSpeed);
         player.play();
+        startupTracer.mark(PlaybackStartupTracer.PHASE_PLAY_CALL);
     }
 
     private void pause() {
-        if (isPlaying() && getCurrentEpisode() != null) {
+        startupTracer.cancel();
+        if (player.isPlaying() && currentEpisode() != null) {
             player.pause();
+            updateAndSaveCurrentEpisodePosition(currentPosition());
+            positionStore.flush();
         }
     }
 
     private void setEpisodeById(long id, boolean shouldPlay) {
-        int index = episodes.indexOf(e -> e.id() == id);
+        int index = episodes.indexOfId(id);
         if (index < 0) {
-            killMediaPlayer();
+            stopPlayback();
             return;
         }
 
-        setEpisodeIndex(index, shouldPlay);
+        moveToIndex(index, shouldPlay);
     }
 
-    private void onLoadEpisodes() {
+    private void onActiveEpisodesChanged(@NonNull List<EpisodeSummary> list) {
+        EpisodeListDiff diff = EpisodeListDiff.between(listedEpisodes, list);
+        if (diff.isEmpty()) return;
 
-        boolean wasPlaying = isPlaying();
-        SharedPreferences prefs = getSharedPreferences(CcrApplication.PREFS_NAME, MODE_PRIVATE);
-        long lastEpisodeId = prefs.getLong(CcrApplication.KEY_LAST_EPISODE_ID, 0L);
-
-        episodes.removeIf(episode ->
-                (episode.audioAbsolutePath() == null) ||
-                !new File(episode.audioAbsolutePath()).exists());
+        listedEpisodes = list;
+        rebuildQueue(diff.changed());
+        Log.d(TAG, "Active episodes updated: +" + diff.added().size() + " -" + diff.removed().size() +
+                " ~" + diff.changed().size() + ", " + episodes.size() + " playable");
+    }
 
-        setEpisodeById(lastEpisodeId, wasPlaying);
+    private void onDownloadedFilesChanged() {
+        rebuildQueue(Set.of());
     }
 
-    private void updateMediaSessionMetadata() {
-        if (mediaSession == null || getCurrentEpisode() == null) return;
+    /* Rebuilds the queue in list order from the file index, keeping entries that didn't change */
+    private void rebuildQueue(@NonNull Set<Long> changedIds) {
+        EpisodeSummary current = currentEpisode();
+        if (current != null && !isStillPlayable(current)) {
+            // Save while the current index still points at this episode
+            stopPlayback();
+        }
 
-        MediaMetadataCompat.Builder metadataBuilder = new MediaMetadataCompat.Builder()
-                .putLong(MediaMetadataCompat.METADATA_KEY_TRACK_NUMBER, episodes.getCurrentIndex() + 1)
-                .putLong(MediaMetadataCompat.METADATA_KEY_NUM_TRACKS, episodes.size())
-                .putString(MediaMetadataCompat.METADATA_KEY_TITLE, getCurrentEpisode().title())
-                .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, getCurrentEpisode().podcastName())
-                .putString(MediaMetadataCompat.METADATA_KEY_DISPLAY_DESCRIPTION, getCurrentEpisode().description())
-                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, getDuration());
+        // The queue keeps the current episode by id
+        episodes.apply(listedEpisodes,
+                episode -> downloadedFiles.contains(episode.audioAbsolutePath()),
+                changedIds,
+                positionStore::applyKnownPosition);
+        Set<Long> ids = new HashSet<>(episodes.size() * 2);
+        for (EpisodeSummary episode : episodes) {
+            ids.add(episode.id());
+        }
+        queuedIds = ids;
+        syncPlaylist();
 
-        mediaSession.setMetadata(metadataBuilder.build());
+        if (current == null) {
+            SharedPreferences prefs = getSharedPreferences(CcrApplication.PREFS_NAME, MODE_PRIVATE);
+            setEpisodeById(prefs.getLong(CcrApplication.KEY_LAST_EPISODE_ID, 0L), false);
+        }
+        if (currentEpisode() != null) {
+            loadDescription(currentEpisode().id());
+        }
+        publishState();
     }
 
-    private void updatePlaybackState() {
-        if (mediaSession == null) return;
-        if (episodes.getCurrentItem() == null) return;
+    /* Brings the player's playlist in line with the queue without interrupting the playing item */
+    private void syncPlaylist() {
+        List<MediaItem> items = new ArrayList<>(episodes.size());
+        for (EpisodeSummary episode : episodes) {
+            items.add(toMediaItem(episode));
+        }
 
-        int state = isPlaying() ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED;
+        int playingQueueIndex = -1;
+        MediaItem playing = player.getCurrentMediaItem();
+        if (playing != null) {
+            playingQueueIndex = episodes.indexOfId(Long.parseLong(playing.mediaId));
+        }
 
-        float playbackSpeed = getPlaybackSpeed();
+        EpisodeSummary current = currentEpisode();
+        if (playingQueueIndex < 0 || current == null || playingQueueIndex != currentIndex()) {
+            if (current == null) {
+                player.clearMediaItems();
+            } else {
+                player.setMediaItems(items, currentIndex(), current.currentPos());
+                player.prepare();
+            }
+            return;
+        }
 
-        PlaybackStateCompat.Builder stateBuilder = new PlaybackStateCompat.Builder()
-                .setActions(
-                        PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS |
-                                PlaybackStateCompat.ACTION_REWIND |
-                                PlaybackStateCompat.ACTION_PLAY |
-                                PlaybackStateCompat.ACTION_PAUSE |
-                                PlaybackStateCompat.ACTION_PLAY_PAUSE |
-                                PlaybackStateCompat.ACTION_FAST_FORWARD |
-                                PlaybackStateCompat.ACTION_SKIP_TO_NEXT |
-                                PlaybackStateCompat.ACTION_STOP |
-                                PlaybackStateCompat.ACTION_SEEK_TO
-                )
-                .setState(state, getCurrentPosition(), playbackSpeed);
+        if (hasSamePlaylist(items)) return;
 
-        mediaSession.setPlaybackState(stateBuilder.build());
+        // Replace everything around the playing item, leaving it and its decoder untouched
+        int playingIndex = player.getCurrentMediaItemIndex();
+        player.removeMediaItems(playingIndex + 1, player.getMediaItemCount());
+        player.removeMediaItems(0, playingIndex);
+        player.addMediaItems(0, items.subList(0, playingQueueIndex));
+        player.addMediaItems(items.subList(playingQueueIndex + 1, items.size()));
     }
 
-    private float getPlaybackSpeed() {
+    private boolean hasSamePlaylist(@NonNull List<MediaItem> items) {
+        if (player.getMediaItemCount() != items.size()) return false;
+
+        for (int i = 0; i < items.size(); ++i) {
+            if (!player.getMediaItemAt(i).mediaId.equals(items.get(i).mediaId)) return false;
+        }
+        return true;
+    }
+
+    @NonNull
+    private MediaItem toMediaItem(@NonNull EpisodeSummary episode) {
+        MediaMetadata metadata = new MediaMetadata.Builder()
+                .setTitle(episode.title())
+                .setArtist(episode.podcastName())
+                .setDescription(descriptions.get(episode.id()))
+                .build();
+
+        return new MediaItem.Builder()
+                .setMediaId(String.valueOf(episode.id()))
+                .setUri(episode.audioAbsolutePath())
+                .setMediaMetadata(metadata)
+                .build();
+    }
+
+    private void onCurrentEpisodeChanged() {
         SharedPreferences prefs = getSharedPreferences(CcrApplication.PREFS_NAME, MODE_PRIVATE);
-        return prefs.getFloat(CcrApplication.KEY_PLAYBACK_SPEED, CcrApplication.DEFAULT_PLAYBACK_SPEED);
+        prefs.edit().putLong(CcrApplication.KEY_LAST_EPISODE_ID, currentEpisode().id()).apply();
+        loadDescription(currentEpisode().id());
     }
 
-    private synchronized void initializePlayer() {
-        if (player != null) {
-            return;
+    /* The player moved on by itself at the end of an episode */
+    private void onAutoAdvance() {
+        EpisodeSummary finished = currentEpisode();
+        if (finished != null) {
+            episodes.replaceCurrentItem(positionStore.savePosition(finished, finished.duration()));
+        }
+
+        episodes.setCurrentIndex(player.getCurrentMediaItemIndex());
+        EpisodeSummary next = currentEpisode();
+        if (next != null) {
+            onCurrentEpisodeChanged();
+            // Resuming a half-heard episode costs a seek; starting a fresh one stays gapless
+            if (next.currentPos() > 0 && next.currentPos() < next.duration()) {
+                player.seekTo(next.currentPos());
+            }
+        }
+
+        handleDeleteAfterListening();
+    }
+
+    /* A seek to another item that didn't go through moveToIndex; the queue follows the player */
+    private void followSeek() {
+        int index = player.getCurrentMediaItemIndex();
+        if (index == currentIndex() || index < 0 || index >= episodes.size()) return;
+
+        episodes.setCurrentIndex(index);
+        onCurrentEpisodeChanged();
+    }
+
+    /* A flag change such as isListenedTo must not interrupt playback, only losing the file does */
+    private boolean isStillPlayable(@NonNull EpisodeSummary current) {
+        for (EpisodeSummary episode : listedEpisodes) {
+            if (episode.id() == current.id()) {
+                return Objects.equals(episode.audioAbsolutePath(), current.audioAbsolutePath())
+                        && downloadedFiles.contains(episode.audioAbsolutePath());
+            }
         }
+        return false;
+    }
+
+    /* Loads the description on a DB reader and swaps it into the playing item's metadata */
+    private void loadDescription(long episodeId) {
+        if (descriptions.containsKey(episodeId)) return;
+
+        AppDatabase.getReadExecutor().execute(() -> {
+            String description = Util.decompressText(episodeDescriptionDao.getCompressedText(episodeId));
+            playbackHandler.post(() -> {
+                descriptions.put(episodeId, description);
+                int index = episodes.indexOfId(episodeId);
+                if (index >= 0 && index < player.getMediaItemCount()
+                        && player.getMediaItemAt(index).mediaId.equals(String.valueOf(episodeId))) {
+                    // Same URI, so ExoPlayer updates the metadata without re-preparing
+                    player.replaceMediaItem(index, toMediaItem(episodes.get(index)));
+                }
+            });
+        });
+    }
 
-        player = new ExoPlayer.Builder(this).build();
+    private float getPlaybackSpeed() {
+        return CcrApplication.getSettings(this).playbackSpeed();
+    }
+
+    private void initializePlayer() {
+        // Downloaded MP3s seek through the frame index written alongside them
+        player = new ExoPlayer.Builder(this)
+                .setLooper(playbackThread.getLooper())
+                .setMediaSourceFactory(new DefaultMediaSourceFactory(this, new IndexedMp3Extractor.Factory()))
+                .build();
 
         player.addListener(new Player.Listener() {
             @Override
             public void onPlaybackStateChanged(int state) {
                 if (state == Player.STATE_READY) {
-                    updateMediaSessionMetadata();
-                } else if (state == Player.STATE_ENDED) {
-                    setEpisodeIndex(episodes.getCurrentIndex() + 1, true);
+                    startupTracer.mark(PlaybackStartupTracer.PHASE_BUFFERING);
+                }
+                if (state == Player.STATE_ENDED) {
+                    // The last episode in the queue finished
+                    EpisodeSummary finished = currentEpisode();
+                    if (finished != null) {
+                        episodes.replaceCurrentItem(positionStore.savePosition(finished, finished.duration()));
+                    }
                     handleDeleteAfterListening();
                 }
             }
 
             @Override
             public void onIsPlayingChanged(boolean isPlaying) {
-                updatePlaybackState();
-                mediaNotifier.updateNotification(isPlaying, mediaSession.getSessionToken());
+                playbackHandler.removeCallbacks(checkpointRunnable);
+                if (isPlaying) {
+                    playbackHandler.postDelayed(checkpointRunnable, CHECKPOINT_INTERVAL_MILLIS);
+                }
+                updatePositionTicks();
             }
-        });
 
-        Log.d(TAG, "Loading audio from: " + getCurrentEpisode().audioAbsolutePath());
+            @Override
+            public void onPlayerError(@NonNull PlaybackException error) {
+                startupTracer.cancel();
+            }
+
+            /* Runs after the individual callbacks, so the queue index is already up to date */
+            @Override
+            public void onEvents(@NonNull Player player, @NonNull Player.Events events) {
+                publishState();
+                if (events.contains(Player.EVENT_POSITION_DISCONTINUITY)) {
+                    publishPosition();
+                }
+            }
 
-        MediaItem mediaItem =
-                new MediaItem.Builder()
-                        .setUri(getCurrentEpisode().audioAbsolutePath())
-                        .build();
+            @Override
+            public void onMediaItemTransition(@Nullable MediaItem mediaItem, int reason) {
+                if (reason == Player.MEDIA_ITEM_TRANSITION_REASON_AUTO) {
+                    onAutoAdvance();
+                } else if (reason == Player.MEDIA_ITEM_TRANSITION_REASON_SEEK) {
+                    followSeek();
+                }
+            }
+        });
 
-        player.setMediaItem(mediaItem);
-        player.prepare();
-        player.seekTo(getCurrentEpisode().currentPos());
+        // The audio sink reports when samples actually start playing out, which is what the user hears
+        player.addAnalyticsListener(new AnalyticsListener() {
+            @Override
+            public void onAudioPositionAdvancing(@NonNull EventTime eventTime, long playoutStartSystemTimeMs) {
+                startupTracer.finish();
+            }
+        });
     }
 
     private void handleDeleteAfterListening() {
-        SharedPreferences prefs = getSharedPreferences(CcrApplication.PREFS_NAME, MODE_PRIVATE);
-        boolean shouldDeleteAfterListening = prefs.getBoolean(CcrApplication.KEY_DELETE_AFTER_LISTENING, false);
-        
-        if (shouldDeleteAfterListening) {
+        if (CcrApplication.getSettings(this).deleteAfterListening()) {
             EpisodeDeleter episodeDeleter = new EpisodeDeleter(this);
-            episodeDeleter.deleteEpisodes(EpisodeMetadata::isListenedTo);
+            episodeDeleter.deleteEpisodes(EpisodeDeleter.Criteria.listenedTo());
         }
     }
 
+    /* Controllers drive the player through the same paths as the app, so positions get saved; runs on the playback thread */
     private void initializeMediaSession() {
-        mediaSession = new MediaSessionCompat(this, TAG);
-
-        mediaSession.setCallback(new MediaSessionCompat.Callback() {
-            @Override public void onPlay() { play(); }
-            @Override public void onPause() { pause(); }
-            @Override public void onSkipToPrevious() { setEpisodeIndex(episodes.getCurrentIndex() - 1, isPlaying()); }
-            @Override public void onSkipToNext() { setEpisodeIndex(episodes.getCurrentIndex() + 1, isPlaying()); }
-            @Override public void onSeekTo(long pos) { seekTo((int) pos); }
-        });
+        Player sessionPlayer = new ForwardingPlayer(player) {
+            @Override public void play() { MediaPlayerService.this.play(System.nanoTime()); }
+            @Override public void pause() { MediaPlayerService.this.pause(); }
+            @Override public void setPlayWhenReady(boolean playWhenReady) { applyPlayPause(playWhenReady); }
+            @Override public void seekTo(long positionMs) { seekToPosition((int) positionMs); }
+            @Override public void seekTo(int mediaItemIndex, long positionMs) { seekToItem(mediaItemIndex, positionMs); }
+            @Override public void seekToDefaultPosition() { seekToPosition(0); }
+            // Another episode resumes where the listener left off, as when picked in the app
+            @Override public void seekToDefaultPosition(int mediaItemIndex) {
+                seekToItem(mediaItemIndex, mediaItemIndex == currentIndex() ? 0 : C.TIME_UNSET);
+            }
+            @Override public long getSeekBackIncrement() { return CcrApplication.getSettings(MediaPlayerService.this).rewindSeconds() * 1000L; }
+            @Override public long getSeekForwardIncrement() { return CcrApplication.getSettings(MediaPlayerService.this).forwardSeconds() * 1000L; }
+            @Override public void seekBack() { seekToPosition(currentPosition() - (int) getSeekBackIncrement()); }
+            @Override public void seekForward() { seekToPosition(currentPosition() + (int) getSeekForwardIncrement()); }
+            @Override public void seekToPrevious() { seekToPreviousMediaItem(); }
+            @Override public void seekToNext() { seekToNextMediaItem(); }
+            @Override public void seekToPreviousMediaItem() { moveToIndex(currentIndex() - 1, player.isPlaying()); }
+            @Override public void seekToNextMediaItem() { moveToIndex(currentIndex() + 1, player.isPlaying()); }
+        };
 
-        mediaSession.setActive(true);
+        mediaSession = new MediaSession.Builder(this, sessionPlayer).build();
     }
 
-    private void updateAndSaveCurrentEpisodePosition(int position) {
-        if (getCurrentEpisode() == null) {
-            return;
+    /* C.TIME_UNSET keeps the episode's saved position */
+    private void seekToItem(int index, long positionMs) {
+        if (index != currentIndex()) {
+            moveToIndex(index, player.isPlaying());
+        }
+        if (positionMs != C.TIME_UNSET) {
+            seekToPosition((int) positionMs);
         }
-        EpisodeMetadata updatedEpisode = EpisodeMetadata.createCopyForUpdate(
-                getCurrentEpisode(),
-                position,
-                true);
+    }
 
-        episodes.replaceCurrentItem(updatedEpisode);
+    @NonNull
+    private PlaybackState currentState() {
+        return new PlaybackState(currentEpisode(), currentIndex(), episodes.size(), player.isPlaying());
+    }
+
+    /* Tells listeners about a change they would show; repeats of the last state are dropped */
+    private void publishState() {
+        if (playbackListeners.isEmpty()) return;
 
-        AppDatabase.getExecutor().execute(() -> {
-            AppDatabase db = AppDatabase.getInstance(getApplicationContext());
-            db.episodeMetadataDao().update(updatedEpisode);
+        PlaybackState state = currentState();
+        if (publishedState != null && publishedState.sameAs(state)) return;
+
+        publishedState = state;
+        mainHandler.post(() -> {
+            for (PlaybackListener listener : playbackListeners) {
+                listener.onStateChanged(state);
+            }
         });
+        publishPosition();
     }
 
-    private void killMediaPlayer() {
-        updateAndSaveCurrentEpisodePosition(getCurrentPosition());
+    private void publishPosition() {
+        if (playbackListeners.isEmpty()) return;
 
-        if (player != null) {
-            if (player.isPlaying()) {
-                player.pause();
+        int position = currentPosition();
+        int duration = currentDuration();
+        mainHandler.post(() -> {
+            for (PlaybackListener listener : playbackListeners) {
+                listener.onPositionChanged(position, duration);
             }
-            player.stop();
+        });
+    }
 
-            player.release();
-            player = null;
+    private void updatePositionTicks() {
+        playbackHandler.removeCallbacks(positionTickRunnable);
+        if (player.isPlaying() && !playbackListeners.isEmpty()) {
+            playbackHandler.postDelayed(positionTickRunnable, POSITION_TICK_MILLIS);
+        }
+    }
+
+    private void tickPosition() {
+        publishPosition();
+        updatePositionTicks();
+    }
+
+    private void checkpointPosition() {
+        if (!player.isPlaying() || currentEpisode() == null) return;
+
+        episodes.replaceCurrentItem(positionStore.checkpoint(currentEpisode(), currentPosition()));
+        playbackHandler.postDelayed(checkpointRunnable, CHECKPOINT_INTERVAL_MILLIS);
+    }
+
+    private void updateAndSaveCurrentEpisodePosition(int position) {
+        if (currentEpisode() == null) {
+            return;
+        }
+        EpisodeSummary updatedEpisode = positionStore.savePosition(currentEpisode(), position);
+
+        episodes.replaceCurrentItem(updatedEpisode);
+    }
+
+    /* Saves the position and pauses; the player and its playlist stay loaded */
+    private void stopPlayback() {
+        updateAndSaveCurrentEpisodePosition(currentPosition());
+        positionStore.flush();
+
+        if (player.isPlaying()) {
+            player.pause();
         }
     }
 }
@@ -0,0 +1,149 @@
+package com.weinmann.ccr.services;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.weinmann.ccr.db.AppDatabase;
+import com.weinmann.ccr.db.DbExecutors;
+import com.weinmann.ccr.records.EpisodeSummary;
+import com.weinmann.ccr.records.PlaybackCheckpoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Coalesces playback position saves. Seeks only update memory and schedule a single write;
+ * crossing the "listened to" threshold and explicit flushes (pause, episode switch,
+ * shutdown) write straight away. Positions are written to playback_checkpoint, which no
+ * list observes, and folded into episode_metadata when the service next starts; only the
+ * listened-to transition touches episode_metadata directly. Runs on the looper it is
+ * created with.
+ */
+public class PlaybackPositionStore {
+    private static final String TAG = "PlaybackPositionStore";
+    private static final long WRITE_DELAY_MILLIS = 10000;
+
+    private final AppDatabase db;
+    private final Handler handler;
+    private final Runnable flushRunnable = this::flush;
+
+    // Positions not yet written, and everything written this session so stale DB reads can be corrected
+    private final Map<Long, Integer> pendingPositions = new HashMap<>();
+    private final Map<Long, Integer> knownPositions = new HashMap<>();
+    private final Set<Long> pendingListenedTo = new HashSet<>();
+
+    // Write amplification: rows written per kind since the last flush, logged when it runs
+    private int checkpointWrites = 0;
+    private int skippedCheckpoints = 0;
+
+    public PlaybackPositionStore(Context context, @NonNull Looper looper) {
+        db = AppDatabase.getInstance(context.getApplicationContext());
+        handler = new Handler(looper);
+    }
+
+    @NonNull
+    public EpisodeSummary savePosition(@NonNull EpisodeSummary episode, int position) {
+        EpisodeSummary updated = episode.createCopyForPosition(position);
+
+        pendingPositions.put(updated.id(), position);
+        knownPositions.put(updated.id(), position);
+
+        if (updated.isListenedTo() && !episode.isListenedTo()) {
+            pendingListenedTo.add(updated.id());
+            flush();
+        } else {
+            handler.removeCallbacks(flushRunnable);
+            handler.postDelayed(flushRunnable, WRITE_DELAY_MILLIS);
+        }
+
+        return updated;
+    }
+
+    /*
+     * Crash insurance while playing: one upsert of a one-row-per-episode table. Skipped when
+     * the position hasn't moved; crossing the listened-to threshold goes through savePosition.
+     */
+    @NonNull
+    public EpisodeSummary checkpoint(@NonNull EpisodeSummary episode, int position) {
+        EpisodeSummary updated = episode.createCopyForPosition(position);
+        if (updated.isListenedTo() && !episode.isListenedTo()) {
+            return savePosition(episode, position);
+        }
+
+        Integer known = knownPositions.get(episode.id());
+        if (known != null && known == position) {
+            skippedCheckpoints++;
+            return updated;
+        }
+
+        knownPositions.put(episode.id(), position);
+        checkpointWrites++;
+        PlaybackCheckpoint checkpoint = new PlaybackCheckpoint(episode.id(), position, System.currentTimeMillis());
+        AppDatabase.executeWrite(DbExecutors.PRIORITY_HIGH, () -> db.playbackCheckpointDao().upsert(checkpoint));
+        return updated;
+    }
+
+    /* Folds checkpoints left by an earlier process into episode_metadata, then runs onDone on the store's looper, which is the playback thread */
+    public void recoverCheckpoints(@NonNull Runnable onDone) {
+        AppDatabase.executeWrite(DbExecutors.PRIORITY_HIGH, () -> {
+            int recovered = db.playbackCheckpointDao().foldIntoEpisodes();
+            if (recovered > 0) {
+                Log.i(TAG, "Recovered " + recovered + " playback positions from checkpoints");
+            }
+            handler.post(onDone);
+        });
+    }
+
+    /* Rows read from the DB may predate a position saved in this session */
+    @NonNull
+    public EpisodeSummary applyKnownPosition(@NonNull EpisodeSummary episode) {
+        Integer position = knownPositions.get(episode.id());
+        if (position == null || position == episode.currentPos()) {
+            return episode;
+        }
+
+        return episode.createCopyForPosition(position);
+    }
+
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        if (pendingPositions.isEmpty() && pendingListenedTo.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Integer> positions = new HashMap<>(pendingPositions);
+        Set<Long> listenedTo = new HashSet<>(pendingListenedTo);
+        pendingPositions.clear();
+        pendingListenedTo.clear();
+
+        Log.d(TAG, "Flushing " + positions.size() + " positions, " + listenedTo.size() + " listened-to; " +
+                checkpointWrites + " checkpoints written and " + skippedCheckpoints + " skipped since last flush");
+        checkpointWrites = 0;
+        skippedCheckpoints = 0;
+
+        long now = System.currentTimeMillis();
+        List<PlaybackCheckpoint> checkpoints = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : positions.entrySet()) {
+            if (!listenedTo.contains(entry.getKey())) {
+                checkpoints.add(new PlaybackCheckpoint(entry.getKey(), entry.getValue(), now));
+            }
+        }
+
+        // Updating episode_metadata would re-run every list observing it, so that waits for the listened-to transition
+        AppDatabase.executeWrite(DbExecutors.PRIORITY_HIGH, () -> db.runInTransaction(() -> {
+            db.playbackCheckpointDao().upsertAll(checkpoints);
+            for (long id : listenedTo) {
+                db.episodeMetadataDao().markListenedTo(id, positions.getOrDefault(id, 0));
+            }
+            db.playbackCheckpointDao().deleteForEpisodes(listenedTo);
+        }));
+    }
+}
@@ -0,0 +1,120 @@
+package com.weinmann.ccr.services;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.weinmann.ccr.records.EpisodeSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/*
+ * The playback queue in play order, with an id -> index map so finding an episode costs a
+ * hash lookup. The current episode is tracked by id, so it stays current when a reload moves
+ * it; if a reload drops it, the episode now at its old position becomes current.
+ * Playback thread only: MediaPlayerService reads and changes it from its playback looper.
+ */
+public class PlaybackQueue implements Iterable<EpisodeSummary> {
+    private List<EpisodeSummary> items = new ArrayList<>();
+    private Map<Long, Integer> indexById = new HashMap<>();
+    private int currentIndex = -1;
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    @NonNull
+    public EpisodeSummary get(int index) {
+        return items.get(index);
+    }
+
+    /* -1 if the episode isn't queued */
+    public int indexOfId(long id) {
+        Integer index = indexById.get(id);
+        return index != null ? index : -1;
+    }
+
+    @Nullable
+    public EpisodeSummary getCurrentItem() {
+        return currentIndex >= 0 ? items.get(currentIndex) : null;
+    }
+
+    /* -1 only when the queue is empty */
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    public void setCurrentIndex(int index) {
+        if (index < 0 || index >= items.size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside queue of " + items.size());
+        }
+        currentIndex = index;
+    }
+
+    /* Returns false, leaving the current episode alone, if the episode isn't queued */
+    public boolean setCurrentId(long id) {
+        int index = indexOfId(id);
+        if (index < 0) return false;
+
+        currentIndex = index;
+        return true;
+    }
+
+    /* Swaps in a newer copy of the current episode, such as one with a saved position */
+    public void replaceCurrentItem(@Nullable EpisodeSummary newItem) {
+        if (newItem == null || currentIndex < 0) return;
+        if (newItem.id() != items.get(currentIndex).id()) {
+            throw new IllegalArgumentException("Episode " + newItem.id() + " is not the current episode");
+        }
+        items.set(currentIndex, newItem);
+    }
+
+    /*
+     * Rebuilds the queue from the listing in one pass. Listed episodes that pass isPlayable
+     * are queued; ones already queued and not in changedIds keep their queued copy, the
+     * rest go through prepareNew first.
+     */
+    public void apply(@NonNull List<EpisodeSummary> listing,
+                      @NonNull Predicate<EpisodeSummary> isPlayable,
+                      @NonNull Set<Long> changedIds,
+                      @NonNull UnaryOperator<EpisodeSummary> prepareNew) {
+        EpisodeSummary current = getCurrentItem();
+        List<EpisodeSummary> newItems = new ArrayList<>(listing.size());
+        Map<Long, Integer> newIndexById = new HashMap<>(listing.size() * 2);
+
+        for (EpisodeSummary episode : listing) {
+            if (!isPlayable.test(episode)) continue;
+
+            int queuedIndex = changedIds.contains(episode.id()) ? -1 : indexOfId(episode.id());
+            newIndexById.put(episode.id(), newItems.size());
+            newItems.add(queuedIndex >= 0 ? items.get(queuedIndex) : prepareNew.apply(episode));
+        }
+
+        int previousIndex = currentIndex;
+        items = newItems;
+        indexById = newIndexById;
+
+        if (items.isEmpty()) {
+            currentIndex = -1;
+        } else if (current == null || !setCurrentId(current.id())) {
+            currentIndex = Math.max(0, Math.min(previousIndex, items.size() - 1));
+        }
+    }
+
+    @NonNull
+    @Override
+    public Iterator<EpisodeSummary> iterator() {
+        return Collections.unmodifiableList(items).iterator();
+    }
+}
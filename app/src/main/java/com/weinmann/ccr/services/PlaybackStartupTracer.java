@@ -0,0 +1,300 @@
+package com.weinmann.ccr.services;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * Times how long it takes from asking for playback to hearing audio, one phase at a time.
+ * The service calls begin() when a tap or play button starts playback, passing the time the
+ * request was made so the wait for the playback thread counts, mark() as each phase
+ * completes, and finish() when audio starts playing out. Finished traces are kept in
+ * <files>/playback_startup.jsonl, one JSON object per line, and summarized into percentiles
+ * per phase. begin/mark/finish/cancel run on the playback thread.
+ */
+public class PlaybackStartupTracer {
+    private static final String TAG = "PlaybackStartupTracer";
+    private static final String FILE_NAME = "playback_startup.jsonl";
+    private static final int MAX_EVENTS = 500;
+    // A trace that hasn't reached audio by then was abandoned, not slow
+    private static final long TRACE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    public static final String TRIGGER_EPISODE_TAP = "episode_tap";
+    public static final String TRIGGER_PLAY = "play";
+
+    public static final String PHASE_QUEUE_WAIT = "queue_wait";
+    public static final String PHASE_STOP_PREVIOUS = "stop_previous";
+    public static final String PHASE_SEEK = "seek";
+    public static final String PHASE_PREPARE = "prepare";
+    public static final String PHASE_PLAY_CALL = "play_call";
+    public static final String PHASE_BUFFERING = "buffering";
+    public static final String PHASE_AUDIO_START = "audio_start";
+    private static final String TOTAL = "total";
+
+    private static volatile PlaybackStartupTracer INSTANCE;
+
+    private final File file;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Oldest first; guarded by itself, since the io thread loads and exports it
+    private final List<JSONObject> events = new ArrayList<>();
+
+    // The trace in progress; startNanos == 0 means none
+    private String trigger;
+    private long startNanos;
+    private long lastMarkNanos;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+    public static PlaybackStartupTracer getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (PlaybackStartupTracer.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new PlaybackStartupTracer(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private PlaybackStartupTracer(@NonNull Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+        ioExecutor.execute(this::load);
+    }
+
+    /* Starts a new trace from requestedNanos, System.nanoTime() on the requesting thread, dropping any unfinished one */
+    public void begin(@NonNull String trigger, long requestedNanos) {
+        this.trigger = trigger;
+        startNanos = requestedNanos;
+        lastMarkNanos = requestedNanos;
+        phaseNanos.clear();
+        mark(PHASE_QUEUE_WAIT);
+    }
+
+    public boolean isTracing() {
+        return startNanos != 0 && System.nanoTime() - startNanos < TRACE_TIMEOUT_NANOS;
+    }
+
+    /* Charges the time since the previous mark to this phase; ignored when nothing is being traced */
+    public void mark(@NonNull String phase) {
+        if (startNanos == 0) return;
+
+        long now = System.nanoTime();
+        phaseNanos.merge(phase, now - lastMarkNanos, Long::sum);
+        lastMarkNanos = now;
+    }
+
+    public void cancel() {
+        startNanos = 0;
+    }
+
+    /* Audio is coming out: records the trace and ends it */
+    public void finish() {
+        if (!isTracing()) {
+            cancel();
+            return;
+        }
+        mark(PHASE_AUDIO_START);
+
+        try {
+            JSONObject phases = new JSONObject();
+            for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+                phases.put(entry.getKey(), TimeUnit.NANOSECONDS.toMicros(entry.getValue()));
+            }
+            phases.put(TOTAL, TimeUnit.NANOSECONDS.toMicros(lastMarkNanos - startNanos));
+
+            JSONObject event = new JSONObject();
+            event.put("timestampMillis", System.currentTimeMillis());
+            event.put("trigger", trigger);
+            event.put("phasesMicros", phases);
+            Log.d(TAG, event.toString());
+
+            synchronized (events) {
+                events.add(event);
+                if (events.size() > MAX_EVENTS) {
+                    events.subList(0, events.size() - MAX_EVENTS).clear();
+                }
+            }
+            ioExecutor.execute(this::save);
+        } catch (JSONException e) {
+            Log.e(TAG, "Could not record startup trace", e);
+        } finally {
+            cancel();
+        }
+    }
+
+    /* Human-readable percentiles per phase, in milliseconds, for a dialog */
+    @NonNull
+    public String formatSummary() {
+        Map<String, long[]> phases = collectPhases();
+        if (phases.isEmpty()) return "No playback starts recorded yet.";
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.getDefault(), "%d playback starts (ms)\n\n", eventCount()));
+        for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+            long[] sorted = entry.getValue();
+            text.append(String.format(Locale.getDefault(), "%s (n=%d)\n  p50 %d  p90 %d  p95 %d  max %d\n",
+                    entry.getKey(),
+                    sorted.length,
+                    percentile(sorted, 0.50) / 1000,
+                    percentile(sorted, 0.90) / 1000,
+                    percentile(sorted, 0.95) / 1000,
+                    sorted[sorted.length - 1] / 1000));
+        }
+        return text.toString();
+    }
+
+    /* Writes the summary and raw traces to <external files>/benchmarks; onDone gets the file, or null, on the main thread */
+    public void export(@NonNull Context context, @NonNull Consumer<File> onDone) {
+        File dir = new File(context.getExternalFilesDir(null), "benchmarks");
+        ioExecutor.execute(() -> {
+            File result = null;
+            try {
+                result = writeExport(dir);
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Export failed", e);
+            }
+            File finalResult = result;
+            mainHandler.post(() -> onDone.accept(finalResult));
+        });
+    }
+
+    @NonNull
+    private File writeExport(@NonNull File dir) throws IOException, JSONException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create benchmarks directory");
+        }
+
+        JSONObject summary = new JSONObject();
+        for (Map.Entry<String, long[]> entry : collectPhases().entrySet()) {
+            long[] sorted = entry.getValue();
+            JSONObject phase = new JSONObject();
+            phase.put("count", sorted.length);
+            phase.put("p50Micros", percentile(sorted, 0.50));
+            phase.put("p90Micros", percentile(sorted, 0.90));
+            phase.put("p95Micros", percentile(sorted, 0.95));
+            phase.put("maxMicros", sorted[sorted.length - 1]);
+            summary.put(entry.getKey(), phase);
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("timestampMillis", System.currentTimeMillis());
+        report.put("device", android.os.Build.MODEL);
+        report.put("sdk", android.os.Build.VERSION.SDK_INT);
+        report.put("summary", summary);
+        synchronized (events) {
+            report.put("events", new JSONArray(events));
+        }
+
+        File exportFile = new File(dir, "playback-startup-" + System.currentTimeMillis() + ".json");
+        try (Writer writer = new FileWriter(exportFile)) {
+            writer.write(report.toString(2));
+        }
+        Log.i(TAG, "Wrote " + exportFile.getAbsolutePath());
+        return exportFile;
+    }
+
+    private int eventCount() {
+        synchronized (events) {
+            return events.size();
+        }
+    }
+
+    /* Sorted durations per phase, in micros, phases in alphabetical order */
+    @NonNull
+    private Map<String, long[]> collectPhases() {
+        Map<String, List<Long>> byPhase = new TreeMap<>();
+        synchronized (events) {
+            for (JSONObject event : events) {
+                JSONObject phases = event.optJSONObject("phasesMicros");
+                if (phases == null) continue;
+
+                for (Iterator<String> it = phases.keys(); it.hasNext(); ) {
+                    String phase = it.next();
+                    byPhase.computeIfAbsent(phase, k -> new ArrayList<>()).add(phases.optLong(phase));
+                }
+            }
+        }
+
+        Map<String, long[]> sortedByPhase = new TreeMap<>();
+        for (Map.Entry<String, List<Long>> entry : byPhase.entrySet()) {
+            long[] values = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(values);
+            sortedByPhase.put(entry.getKey(), values);
+        }
+        return sortedByPhase;
+    }
+
+    private static long percentile(@NonNull long[] sorted, double fraction) {
+        return sorted[Math.max(0, (int) Math.ceil(sorted.length * fraction) - 1)];
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+
+        List<JSONObject> loaded = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    loaded.add(new JSONObject(line));
+                } catch (JSONException e) {
+                    Log.w(TAG, "Skipping unreadable startup trace");
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read " + file, e);
+            return;
+        }
+
+        synchronized (events) {
+            // Traces finished before the load completed are newer than anything on disk
+            events.addAll(0, loaded);
+            if (events.size() > MAX_EVENTS) {
+                events.subList(0, events.size() - MAX_EVENTS).clear();
+            }
+        }
+    }
+
+    /* Rewrites the whole file; at MAX_EVENTS short lines that is cheaper than trimming an append log */
+    private void save() {
+        List<JSONObject> snapshot;
+        synchronized (events) {
+            snapshot = new ArrayList<>(events);
+        }
+
+        try (Writer writer = new FileWriter(file)) {
+            for (JSONObject event : snapshot) {
+                writer.write(event.toString());
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + file, e);
+        }
+    }
+}
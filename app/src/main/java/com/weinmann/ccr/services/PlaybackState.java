@@ -0,0 +1,29 @@
+package com.weinmann.ccr.services;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.weinmann.ccr.records.EpisodeSummary;
+
+/* What the player screen shows apart from the position, which ticks separately */
+public record PlaybackState(
+        @Nullable
+        EpisodeSummary episode,
+
+        int episodeIndex,
+
+        int episodeCount,
+
+        boolean isPlaying)
+{
+    /* Same episode text and queue position; a saved playback position alone doesn't count */
+    public boolean sameEpisodeAs(@NonNull PlaybackState other) {
+        if (episodeIndex != other.episodeIndex || episodeCount != other.episodeCount) return false;
+        if (episode == null || other.episode == null) return episode == other.episode;
+        return episode.sameListingAs(other.episode);
+    }
+
+    public boolean sameAs(@NonNull PlaybackState other) {
+        return isPlaying == other.isPlaying && sameEpisodeAs(other);
+    }
+}
@@ -0,0 +1,20 @@
+package com.weinmann.ccr;
+
+import android.app.Activity;
+import android.view.Menu;
+import android.view.MenuItem;
+
+import androidx.annotation.NonNull;
+
+/* Release builds have no debug menu entries; see the debug source set */
+final class DebugMenu {
+    private DebugMenu() {
+    }
+
+    static void addItems(@NonNull Activity activity, @NonNull Menu menu) {
+    }
+
+    static boolean onItemSelected(@NonNull Activity activity, @NonNull MenuItem item) {
+        return false;
+    }
+}
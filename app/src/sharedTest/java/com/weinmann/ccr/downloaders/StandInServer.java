@@ -0,0 +1,180 @@
+package com.weinmann.ccr.downloaders;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+/*
+ * Local stand-in for podcast hosts. Serves generated feeds at /feed/<episodes>.xml and
+ * generated audio at /audio/<bytes>.mp3, and can inject one fault per path, or answer a
+ * path with a bare status code (and a Location back to itself) a given number of times.
+ * Feeds link their audio under HOST, which tests map back here through createConnection.
+ */
+class StandInServer implements Closeable {
+    static final String HOST = "http://podcasts.example.com";
+
+    static final int FAULT_NONE = 0;
+    static final int FAULT_SLOW_BODY = 1;
+    static final int FAULT_RESET_MID_BODY = 2;
+    static final int FAULT_SERVER_ERROR = 3;
+    static final int FAULT_NO_CONTENT_LENGTH = 4;
+    static final int FAULT_SLOW_HEADERS = 5;
+
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no CRC or padding: 144 * 128000 / 44100 bytes a frame
+    static final int MP3_FRAME_HEADER = 0xFFFB9000;
+    static final int MP3_FRAME_BYTES = 417;
+    private static final long FIRST_PUB_DATE_SECONDS = 1_700_000_000L;
+
+    // Slow enough to take a noticeable while, steady enough to never hit a read timeout
+    static final int SLOW_CHUNK_BYTES = 16 * 1024;
+    static final long SLOW_CHUNK_MILLIS = 50;
+    static final long SLOW_HEADERS_MILLIS = 2000;
+
+    private final MockWebServer server = new MockWebServer();
+    private final Map<String, Integer> faults = new ConcurrentHashMap<>();
+    private final Map<String, int[]> statuses = new ConcurrentHashMap<>();
+
+    StandInServer() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @NonNull
+            @Override
+            public MockResponse dispatch(@NonNull RecordedRequest request) {
+                return respond(request.getPath());
+            }
+        });
+        server.start();
+    }
+
+    void inject(@NonNull String path, int fault) {
+        faults.put(path, fault);
+    }
+
+    /* Answers the next `times` requests for path with statusCode before serving it normally */
+    void injectStatus(@NonNull String path, int statusCode, int times) {
+        statuses.put(path, new int[]{statusCode, times});
+    }
+
+    @NonNull
+    HttpUrl baseUrl() {
+        return server.url("/");
+    }
+
+    int getRequestCount() {
+        return server.getRequestCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    /*
+     * The bytes /audio/<bytes>.mp3 serves, so a test can compare what it downloaded: silent
+     * MP3 frames, so that duration and seek index readers accept them too
+     */
+    @NonNull
+    static byte[] audioBytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int frame = 0; frame < length; frame += MP3_FRAME_BYTES) {
+            for (int i = 0; i < 4 && frame + i < length; ++i) {
+                bytes[frame + i] = (byte) (MP3_FRAME_HEADER >>> (24 - 8 * i));
+            }
+        }
+        return bytes;
+    }
+
+    @NonNull
+    static String feed(int episodes) {
+        StringBuilder rss = new StringBuilder();
+        rss.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<rss version=\"2.0\"><channel><title>Stand-in feed</title>\n");
+        for (int i = 1; i <= episodes; ++i) {
+            String pubDate = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                    Instant.ofEpochSecond(FIRST_PUB_DATE_SECONDS + i * 86_400L).atOffset(ZoneOffset.UTC));
+            rss.append("<item><title>Episode ").append(i).append("</title>")
+                    .append("<guid>episode-").append(i).append("</guid>")
+                    .append("<description>Notes for episode ").append(i).append("</description>")
+                    .append("<pubDate>").append(pubDate).append("</pubDate>")
+                    .append("<enclosure url=\"").append(HOST).append(audioPath(feedAudioBytes(i)))
+                    .append("\" type=\"audio/mpeg\"/>")
+                    .append("</item>\n");
+        }
+        return rss.append("</channel></rss>\n").toString();
+    }
+
+    /* How long the audio of episode n (1-based) of a generated feed is: n hundred frames */
+    static int feedAudioBytes(int episode) {
+        return episode * 100 * MP3_FRAME_BYTES;
+    }
+
+    @NonNull
+    static String audioPath(int length) {
+        return "/audio/" + length + ".mp3";
+    }
+
+    @NonNull
+    private MockResponse respond(String path) {
+        if (path == null) {
+            return new MockResponse().setResponseCode(400);
+        }
+
+        int[] status = statuses.get(path);
+        if (status != null && status[1]-- > 0) {
+            return new MockResponse().setResponseCode(status[0]).setHeader("Location", path);
+        }
+
+        int fault = faults.getOrDefault(path, FAULT_NONE);
+        if (fault == FAULT_SERVER_ERROR) {
+            return new MockResponse().setResponseCode(503);
+        }
+
+        Buffer body = body(path);
+        if (body == null) {
+            return new MockResponse().setResponseCode(404);
+        }
+
+        MockResponse response = new MockResponse();
+        switch (fault) {
+            case FAULT_SLOW_BODY -> response.setBody(body)
+                    .throttleBody(SLOW_CHUNK_BYTES, SLOW_CHUNK_MILLIS, TimeUnit.MILLISECONDS);
+            case FAULT_RESET_MID_BODY -> response.setBody(body)
+                    .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+            case FAULT_NO_CONTENT_LENGTH -> response.setChunkedBody(body, SLOW_CHUNK_BYTES);
+            case FAULT_SLOW_HEADERS -> response.setBody(body)
+                    .setHeadersDelay(SLOW_HEADERS_MILLIS, TimeUnit.MILLISECONDS);
+            default -> response.setBody(body);
+        }
+        return response;
+    }
+
+    private static Buffer body(@NonNull String path) {
+        try {
+            if (path.startsWith("/feed/") && path.endsWith(".xml")) {
+                int episodes = Integer.parseInt(path.substring("/feed/".length(), path.length() - ".xml".length()));
+                return new Buffer().writeUtf8(feed(episodes));
+            }
+            if (path.startsWith("/audio/") && path.endsWith(".mp3")) {
+                int length = Integer.parseInt(path.substring("/audio/".length(), path.length() - ".mp3".length()));
+                return new Buffer().write(audioBytes(length));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,278 @@
+package com.weinmann.ccr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Feeds Mp3SeekIndex.Builder synthetic frame streams: silent stereo Layer III frames
+ * whose header is the only non-zero part. Both frame kinds below last 26122 us, so entry
+ * 1 lands on frame 38 and entry 2 on frame 76 whatever the MPEG version.
+ */
+public class Mp3SeekIndexTest {
+    // MPEG-1, 128 kbit/s, 44.1 kHz: 1152 samples in 144 * 128000 / 44100 = 417 bytes
+    private static final int MPEG1_HEADER = 0xFFFB9000;
+    private static final int MPEG1_FRAME_BYTES = 417;
+    // MPEG-2, 80 kbit/s, 22.05 kHz: 576 samples in 72 * 80000 / 22050 = 261 bytes
+    private static final int MPEG2_HEADER = 0xFFF39000;
+    private static final int MPEG2_FRAME_BYTES = 261;
+    // Same as MPEG1_HEADER but 48 kHz, which a stream that started at 44.1 kHz treats as a false sync
+    private static final int MPEG1_48K_HEADER = 0xFFFB9400;
+
+    private static final int FRAMES = 100;
+    // FRAMES * 1152 / 44100 s, which is also FRAMES * 576 / 22050 s
+    private static final long FRAMES_DURATION_US = 2_612_244;
+    private static final long FRAME_38_US = 992_653;
+    private static final long FRAME_76_US = 1_985_306;
+    // Odd so frames and tags straddle writes
+    private static final int WRITE_BYTES = 97;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexesTheFramePlayingAtEachSecond() throws IOException {
+        Mp3SeekIndex index = build(frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, FRAMES));
+
+        assertEquals(FRAMES_DURATION_US, index.getDurationUs());
+        assertEntries(index, 0, 0, FRAME_38_US, 38 * MPEG1_FRAME_BYTES, FRAME_76_US, 76 * MPEG1_FRAME_BYTES);
+        assertEquals(1, index.indexFor(1_500_000));
+        assertEquals(2, index.indexFor(10_000_000));
+        assertEquals(0, index.indexFor(-1));
+        assertEquals(FRAME_38_US, index.getTimeUsAtPosition(38 * MPEG1_FRAME_BYTES));
+        assertEquals(Mp3SeekIndex.NOT_INDEXED, index.getTimeUsAtPosition(37 * MPEG1_FRAME_BYTES));
+    }
+
+    @Test
+    public void passesEveryByteThroughWhateverTheWriteSizes() throws IOException {
+        byte[] stream = frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, FRAMES);
+
+        ByteArrayOutputStream bytewise = new ByteArrayOutputStream();
+        Mp3SeekIndex.Builder builder = new Mp3SeekIndex.Builder(bytewise);
+        for (byte b : stream) {
+            builder.write(b);
+        }
+        Mp3SeekIndex index = builder.build();
+
+        assertArrayEquals(stream, bytewise.toByteArray());
+        assertNotNull(index);
+        assertEntries(index, 0, 0, FRAME_38_US, 38 * MPEG1_FRAME_BYTES, FRAME_76_US, 76 * MPEG1_FRAME_BYTES);
+    }
+
+    @Test
+    public void skipsId3v2Tag() throws IOException {
+        // A sync word inside the tag must not be taken for a frame
+        byte[] tag = id3Tag(300, false);
+        writeHeader(tag, 100, MPEG1_HEADER);
+
+        Mp3SeekIndex index = build(concat(tag, frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, FRAMES)));
+
+        assertEquals(FRAMES_DURATION_US, index.getDurationUs());
+        assertEntries(index, 0, tag.length, FRAME_38_US, tag.length + 38 * MPEG1_FRAME_BYTES,
+                FRAME_76_US, tag.length + 76 * MPEG1_FRAME_BYTES);
+    }
+
+    @Test
+    public void skipsId3v2TagFooter() throws IOException {
+        byte[] tag = id3Tag(300, true);
+        assertEquals(320, tag.length);
+
+        Mp3SeekIndex index = build(concat(tag, frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, FRAMES)));
+
+        assertEquals(FRAMES_DURATION_US, index.getDurationUs());
+        assertEquals(tag.length, index.getPosition(0));
+    }
+
+    @Test
+    public void skipsXingInfoAndVbriFirstFrame() throws IOException {
+        // Stereo side info is 32 bytes for MPEG-1 and 17 for MPEG-2; VBRI always sits at 36
+        assertSkipsInfoFrame(MPEG1_HEADER, MPEG1_FRAME_BYTES, 4 + 32, "Xing");
+        assertSkipsInfoFrame(MPEG1_HEADER, MPEG1_FRAME_BYTES, 4 + 32, "Info");
+        assertSkipsInfoFrame(MPEG1_HEADER, MPEG1_FRAME_BYTES, 36, "VBRI");
+        assertSkipsInfoFrame(MPEG2_HEADER, MPEG2_FRAME_BYTES, 4 + 17, "Xing");
+        assertSkipsInfoFrame(MPEG2_HEADER, MPEG2_FRAME_BYTES, 36, "VBRI");
+    }
+
+    @Test
+    public void infoTagAtWrongOffsetIsAudio() throws IOException {
+        byte[] stream = frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, FRAMES);
+        writeTag(stream, 4 + 17, "Xing");
+
+        Mp3SeekIndex index = build(stream);
+
+        assertEquals(FRAMES_DURATION_US, index.getDurationUs());
+        assertEquals(0, index.getPosition(0));
+    }
+
+    @Test
+    public void sizesMpeg2Frames() throws IOException {
+        Mp3SeekIndex index = build(frames(MPEG2_HEADER, MPEG2_FRAME_BYTES, FRAMES));
+
+        assertEquals(FRAMES_DURATION_US, index.getDurationUs());
+        assertEntries(index, 0, 0, FRAME_38_US, 38 * MPEG2_FRAME_BYTES, FRAME_76_US, 76 * MPEG2_FRAME_BYTES);
+    }
+
+    @Test
+    public void resyncsPastGarbageAndFalseSyncs() throws IOException {
+        byte[] garbage = {0x12, 0x34, 0x56};
+        byte[] falseSync = new byte[4];
+        writeHeader(falseSync, 0, MPEG1_48K_HEADER);
+        int skipped = garbage.length + falseSync.length;
+
+        Mp3SeekIndex index = build(concat(
+                frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, 20),
+                garbage,
+                falseSync,
+                frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, FRAMES - 20)));
+
+        assertEquals(FRAMES_DURATION_US, index.getDurationUs());
+        assertEntries(index, 0, 0, FRAME_38_US, skipped + 38 * MPEG1_FRAME_BYTES,
+                FRAME_76_US, skipped + 76 * MPEG1_FRAME_BYTES);
+    }
+
+    @Test
+    public void noFramesBuildsNoIndex() throws IOException {
+        Mp3SeekIndex.Builder builder = new Mp3SeekIndex.Builder(new ByteArrayOutputStream());
+        builder.write(new byte[2000]);
+
+        assertNull(builder.build());
+    }
+
+    @Test
+    public void readReturnsWrittenIndex() throws IOException {
+        File audioFile = writeAudioFile(frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, FRAMES));
+
+        Mp3SeekIndex index = Mp3SeekIndex.read(audioFile);
+
+        assertNotNull(index);
+        assertEquals(FRAMES_DURATION_US, index.getDurationUs());
+        assertEntries(index, 0, 0, FRAME_38_US, 38 * MPEG1_FRAME_BYTES, FRAME_76_US, 76 * MPEG1_FRAME_BYTES);
+    }
+
+    @Test
+    public void readRejectsIndexBuiltForDifferentLength() throws IOException {
+        File audioFile = writeAudioFile(frames(MPEG1_HEADER, MPEG1_FRAME_BYTES, FRAMES));
+        Files.write(audioFile.toPath(), new byte[1], StandardOpenOption.APPEND);
+
+        assertNull(Mp3SeekIndex.read(audioFile));
+    }
+
+    @Test
+    public void readWithoutIndexFileReturnsNull() throws IOException {
+        File audioFile = folder.newFile("unindexed.mp3");
+
+        assertNull(Mp3SeekIndex.read(audioFile));
+    }
+
+    private void assertSkipsInfoFrame(int header, int frameBytes, int offset, @NonNull String tag) throws IOException {
+        byte[] infoFrame = frames(header, frameBytes, 1);
+        writeTag(infoFrame, offset, tag);
+
+        Mp3SeekIndex index = build(concat(infoFrame, frames(header, frameBytes, FRAMES)));
+
+        assertEquals(tag, FRAMES_DURATION_US, index.getDurationUs());
+        assertEquals(tag, 0, index.getTimeUs(0));
+        assertEquals(tag, frameBytes, index.getPosition(0));
+        assertEquals(tag, frameBytes + 38 * frameBytes, index.getPosition(1));
+    }
+
+    /* Pairs of start time and byte offset, one per entry */
+    private static void assertEntries(@NonNull Mp3SeekIndex index, long... timesAndPositions) {
+        assertEquals(timesAndPositions.length / 2, index.size());
+        for (int i = 0; i < index.size(); ++i) {
+            assertEquals("time of entry " + i, timesAndPositions[2 * i], index.getTimeUs(i));
+            assertEquals("position of entry " + i, timesAndPositions[2 * i + 1], index.getPosition(i));
+        }
+    }
+
+    @NonNull
+    private static Mp3SeekIndex build(@NonNull byte[] stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Mp3SeekIndex index;
+        try (Mp3SeekIndex.Builder builder = new Mp3SeekIndex.Builder(out)) {
+            for (int off = 0; off < stream.length; off += WRITE_BYTES) {
+                builder.write(stream, off, Math.min(WRITE_BYTES, stream.length - off));
+            }
+            index = builder.build();
+        }
+
+        assertArrayEquals(stream, out.toByteArray());
+        assertNotNull(index);
+        return index;
+    }
+
+    @NonNull
+    private File writeAudioFile(@NonNull byte[] stream) throws IOException {
+        File audioFile = folder.newFile("episode.mp3");
+        Mp3SeekIndex index;
+        try (Mp3SeekIndex.Builder builder = new Mp3SeekIndex.Builder(new FileOutputStream(audioFile))) {
+            builder.write(stream);
+            index = builder.build();
+        }
+
+        assertNotNull(index);
+        index.writeTo(Mp3SeekIndex.fileFor(audioFile.getAbsolutePath()));
+        return audioFile;
+    }
+
+    @NonNull
+    private static byte[] frames(int header, int frameBytes, int count) {
+        byte[] stream = new byte[frameBytes * count];
+        for (int i = 0; i < count; ++i) {
+            writeHeader(stream, i * frameBytes, header);
+        }
+        return stream;
+    }
+
+    /* An ID3v2.4 tag of size bytes after its header, all padding */
+    @NonNull
+    private static byte[] id3Tag(int size, boolean hasFooter) {
+        byte[] tag = new byte[10 + size + (hasFooter ? 10 : 0)];
+        writeTag(tag, 0, "ID3");
+        tag[3] = 4;
+        tag[5] = (byte) (hasFooter ? 0x10 : 0);
+        // Syncsafe: seven bits per byte
+        tag[6] = (byte) ((size >>> 21) & 0x7F);
+        tag[7] = (byte) ((size >>> 14) & 0x7F);
+        tag[8] = (byte) ((size >>> 7) & 0x7F);
+        tag[9] = (byte) (size & 0x7F);
+        return tag;
+    }
+
+    private static void writeHeader(@NonNull byte[] stream, int offset, int header) {
+        stream[offset] = (byte) (header >>> 24);
+        stream[offset + 1] = (byte) (header >>> 16);
+        stream[offset + 2] = (byte) (header >>> 8);
+        stream[offset + 3] = (byte) header;
+    }
+
+    private static void writeTag(@NonNull byte[] stream, int offset, @NonNull String tag) {
+        byte[] bytes = tag.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, stream, offset, bytes.length);
+    }
+
+    @NonNull
+    private static byte[] concat(@NonNull byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+}
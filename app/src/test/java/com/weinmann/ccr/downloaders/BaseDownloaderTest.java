@@ -0,0 +1,209 @@
+package com.weinmann.ccr.downloaders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Runs BaseDownloader against StandInServer. Feed and audio URLs name a made-up host; the
+ * createConnection seam sends every request to the stand-in instead. Timed cases assert
+ * bounds derived from the stand-in's throttling and print their durations to the test log.
+ */
+public class BaseDownloaderTest {
+    private static final String HOST = StandInServer.HOST;
+    private static final int AUDIO_BYTES = 256 * 1024;
+    private static final String AUDIO_PATH = StandInServer.audioPath(AUDIO_BYTES);
+    // How long the whole throttled body takes to arrive
+    private static final long SLOW_BODY_MILLIS =
+            AUDIO_BYTES / StandInServer.SLOW_CHUNK_BYTES * StandInServer.SLOW_CHUNK_MILLIS;
+
+    private StandInServer server;
+    private AtomicBoolean abortRequested;
+    private TestDownloader downloader;
+
+    private class TestDownloader extends BaseDownloader {
+        private int readTimeoutMillis = 0;
+
+        TestDownloader() {
+            super(abortRequested);
+        }
+
+        @NonNull
+        @Override
+        protected HttpURLConnection createConnection(@NonNull URL url) throws IOException {
+            URL standIn = server.baseUrl().newBuilder().encodedPath(url.getPath()).build().url();
+            HttpURLConnection connection = super.createConnection(standIn);
+            if (readTimeoutMillis > 0) {
+                connection.setReadTimeout(readTimeoutMillis);
+            }
+            return connection;
+        }
+
+        @NonNull
+        byte[] fetchBinary(@NonNull String path) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            fetchBinaryUrl(HOST + path, out);
+            return out.toByteArray();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInServer();
+        abortRequested = new AtomicBoolean(false);
+        downloader = new TestDownloader();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void fetchesFeedThroughSeam() throws Exception {
+        assertEquals(StandInServer.feed(3), downloader.fetchTextUrl(HOST + "/feed/3.xml"));
+    }
+
+    @Test
+    public void fetchesAudio() throws IOException {
+        assertArrayEquals(StandInServer.audioBytes(AUDIO_BYTES), downloader.fetchBinary(AUDIO_PATH));
+        assertEquals(AUDIO_BYTES, downloader.getCurrentBytes());
+    }
+
+    @Test
+    public void followsEachRedirectCode() throws IOException {
+        for (int code : new int[]{301, 302, 303, 307, 308}) {
+            server.injectStatus(AUDIO_PATH, code, 2);
+            int requestsBefore = server.getRequestCount();
+
+            assertArrayEquals("HTTP " + code, StandInServer.audioBytes(AUDIO_BYTES), downloader.fetchBinary(AUDIO_PATH));
+            assertEquals("HTTP " + code, 3, server.getRequestCount() - requestsBefore);
+        }
+    }
+
+    @Test
+    public void notModifiedIsNotARedirect() {
+        server.injectStatus(AUDIO_PATH, 304, 1);
+
+        IOException e = assertThrows(IOException.class, () -> downloader.fetchBinary(AUDIO_PATH));
+        assertTrue(e.getMessage(), e.getMessage().startsWith("HTTP 304"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void redirectLoopFails() {
+        server.injectStatus(AUDIO_PATH, 302, Integer.MAX_VALUE);
+
+        IOException e = assertThrows(IOException.class, () -> downloader.fetchBinary(AUDIO_PATH));
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Too many redirects"));
+    }
+
+    @Test
+    public void serverErrorFails() {
+        server.inject(AUDIO_PATH, StandInServer.FAULT_SERVER_ERROR);
+
+        IOException e = assertThrows(IOException.class, () -> downloader.fetchBinary(AUDIO_PATH));
+        assertTrue(e.getMessage(), e.getMessage().startsWith("HTTP 503"));
+    }
+
+    @Test
+    public void missingFileFails() {
+        IOException e = assertThrows(IOException.class, () -> downloader.fetchBinary("/audio/missing.mp3"));
+        assertTrue(e.getMessage(), e.getMessage().startsWith("HTTP 404"));
+    }
+
+    @Test
+    public void resetMidBodyFails() {
+        server.inject(AUDIO_PATH, StandInServer.FAULT_RESET_MID_BODY);
+
+        assertThrows(IOException.class, () -> downloader.fetchBinary(AUDIO_PATH));
+        assertTrue(downloader.getCurrentBytes() < AUDIO_BYTES);
+    }
+
+    @Test
+    public void missingContentLengthIsFine() throws IOException {
+        server.inject(AUDIO_PATH, StandInServer.FAULT_NO_CONTENT_LENGTH);
+
+        assertArrayEquals(StandInServer.audioBytes(AUDIO_BYTES), downloader.fetchBinary(AUDIO_PATH));
+    }
+
+    @Test
+    public void slowBodyCompletes() throws IOException {
+        server.inject(AUDIO_PATH, StandInServer.FAULT_SLOW_BODY);
+
+        long startNanos = System.nanoTime();
+        byte[] bytes = downloader.fetchBinary(AUDIO_PATH);
+        long elapsedMillis = report("slow body", startNanos);
+
+        assertArrayEquals(StandInServer.audioBytes(AUDIO_BYTES), bytes);
+        // The last chunk isn't followed by a delay, so allow for one chunk less
+        long minimumMillis = SLOW_BODY_MILLIS - StandInServer.SLOW_CHUNK_MILLIS;
+        assertTrue(elapsedMillis + " ms", elapsedMillis >= minimumMillis);
+        assertTrue(elapsedMillis + " ms", elapsedMillis < SLOW_BODY_MILLIS * 5);
+    }
+
+    @Test
+    public void slowHeadersTimeOut() {
+        server.inject(AUDIO_PATH, StandInServer.FAULT_SLOW_HEADERS);
+        downloader.readTimeoutMillis = 250;
+
+        long startNanos = System.nanoTime();
+        assertThrows(SocketTimeoutException.class, () -> downloader.fetchBinary(AUDIO_PATH));
+        long elapsedMillis = report("slow headers", startNanos);
+
+        assertTrue(elapsedMillis + " ms", elapsedMillis >= downloader.readTimeoutMillis);
+        assertTrue(elapsedMillis + " ms", elapsedMillis < StandInServer.SLOW_HEADERS_MILLIS);
+    }
+
+    @Test
+    public void abortStopsSlowBody() throws IOException {
+        server.inject(AUDIO_PATH, StandInServer.FAULT_SLOW_BODY);
+        // Aborts the moment the first throttled chunk is written, so no clock decides when
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        OutputStream abortOnFirstWrite = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(@NonNull byte[] b, int off, int len) {
+                received.write(b, off, len);
+                abortRequested.set(true);
+            }
+        };
+
+        long startNanos = System.nanoTime();
+        downloader.fetchBinaryUrl(HOST + AUDIO_PATH, abortOnFirstWrite);
+        long elapsedMillis = report("aborted slow body", startNanos);
+
+        // Nothing after the aborting write is kept
+        assertEquals(received.size(), downloader.getCurrentBytes());
+        assertTrue(downloader.getCurrentBytes() > 0);
+        assertTrue(downloader.getCurrentBytes() <= StandInServer.SLOW_CHUNK_BYTES);
+        // At most one more chunk's wait before the read loop sees the abort, never the whole body
+        assertTrue(elapsedMillis + " ms", elapsedMillis < SLOW_BODY_MILLIS / 2);
+    }
+
+    private static long report(@NonNull String name, long startNanos) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        System.out.println("BaseDownloaderTest " + name + ": " + elapsedMillis + " ms");
+        return elapsedMillis;
+    }
+}
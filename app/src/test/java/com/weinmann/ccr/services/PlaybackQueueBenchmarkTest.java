@@ -0,0 +1,79 @@
+package com.weinmann.ccr.services;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import com.weinmann.ccr.records.EpisodeSummary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/*
+ * Times a reload, id lookups and current tracking on a queue of QUEUE_SIZE episodes and
+ * prints the percentiles, so a regression shows up in the test log between builds.
+ */
+public class PlaybackQueueBenchmarkTest {
+    private static final int QUEUE_SIZE = 10_000;
+    private static final int LOOKUPS_PER_RUN = 1_000;
+    private static final int WARMUP_RUNS = 20;
+    private static final int MEASURED_RUNS = 50;
+    // Fixed so every build benchmarks the same data
+    private static final long SEED = 42L;
+
+    @Test
+    public void tenThousandEpisodes() {
+        Random random = new Random(SEED);
+        List<EpisodeSummary> listing = new ArrayList<>(QUEUE_SIZE);
+        for (int e = 1; e <= QUEUE_SIZE; ++e) {
+            listing.add(PlaybackQueueTest.episode(e));
+        }
+        // Reversed so every reload moves every episode, the current one included
+        List<EpisodeSummary> reversed = new ArrayList<>(listing);
+        Collections.reverse(reversed);
+
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.apply(listing, episode -> true, Set.of(), episode -> episode);
+        queue.setCurrentId(QUEUE_SIZE / 2);
+
+        measure("apply", run -> queue.apply(
+                run % 2 == 0 ? reversed : listing, episode -> true, Set.of(), episode -> episode));
+        measure("indexOfId x" + LOOKUPS_PER_RUN, run -> {
+            for (int i = 0; i < LOOKUPS_PER_RUN; ++i) {
+                queue.indexOfId(1 + random.nextInt(QUEUE_SIZE));
+            }
+        });
+
+        // Reloads kept the current episode however often they moved it
+        assertEquals(QUEUE_SIZE / 2, queue.getCurrentItem() == null ? -1 : queue.getCurrentItem().id());
+
+        measure("setCurrentId", run -> queue.setCurrentId(1 + random.nextInt(QUEUE_SIZE)));
+    }
+
+    private static void measure(@NonNull String name, @NonNull IntConsumer operation) {
+        for (int run = 0; run < WARMUP_RUNS; ++run) {
+            operation.accept(run);
+        }
+
+        long[] nanos = new long[MEASURED_RUNS];
+        for (int run = 0; run < MEASURED_RUNS; ++run) {
+            long start = System.nanoTime();
+            operation.accept(WARMUP_RUNS + run);
+            nanos[run] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(nanos);
+        System.out.println("PlaybackQueueBenchmarkTest " + name + ": median " +
+                TimeUnit.NANOSECONDS.toMicros(nanos[nanos.length / 2]) + " us, p95 " +
+                TimeUnit.NANOSECONDS.toMicros(nanos[(int) Math.ceil(nanos.length * 0.95) - 1]) + " us, max " +
+                TimeUnit.NANOSECONDS.toMicros(nanos[nanos.length - 1]) + " us");
+    }
+}
@@ -0,0 +1,204 @@
+package com.weinmann.ccr.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import com.weinmann.ccr.records.EpisodeSummary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+public class PlaybackQueueTest {
+
+    @Test
+    public void firstApplyQueuesPlayableEpisodesAndMakesFirstCurrent() {
+        PlaybackQueue queue = new PlaybackQueue();
+
+        queue.apply(listing(1, 2, 3, 4), episode -> episode.id() % 2 == 0, Set.of(), episode -> episode);
+
+        assertIds(queue, 2, 4);
+        assertEquals(0, queue.getCurrentIndex());
+        assertEquals(2, currentId(queue));
+        assertEquals(-1, queue.indexOfId(1));
+    }
+
+    @Test
+    public void emptyQueueHasNoCurrent() {
+        PlaybackQueue queue = new PlaybackQueue();
+        assertTrue(queue.isEmpty());
+        assertEquals(-1, queue.getCurrentIndex());
+        assertNull(queue.getCurrentItem());
+
+        apply(queue, listing(1, 2), Set.of());
+        apply(queue, listing(), Set.of());
+
+        assertTrue(queue.isEmpty());
+        assertEquals(-1, queue.getCurrentIndex());
+        assertNull(queue.getCurrentItem());
+    }
+
+    @Test
+    public void currentFollowsItsEpisodeWhenReordered() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2, 3, 4), Set.of());
+        assertTrue(queue.setCurrentId(2));
+
+        apply(queue, listing(4, 3, 2, 1), Set.of());
+
+        assertIds(queue, 4, 3, 2, 1);
+        assertEquals(2, queue.getCurrentIndex());
+        assertEquals(2, currentId(queue));
+    }
+
+    @Test
+    public void currentFollowsItsEpisodeWhenOthersAreInsertedAndRemoved() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2, 3), Set.of());
+        queue.setCurrentId(3);
+
+        apply(queue, listing(5, 6, 3, 7), Set.of());
+
+        assertEquals(2, queue.getCurrentIndex());
+        assertEquals(3, currentId(queue));
+    }
+
+    @Test
+    public void droppedCurrentHandsOverToEpisodeAtItsPosition() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2, 3, 4), Set.of());
+        queue.setCurrentId(2);
+
+        apply(queue, listing(1, 3, 4), Set.of());
+
+        assertEquals(1, queue.getCurrentIndex());
+        assertEquals(3, currentId(queue));
+    }
+
+    @Test
+    public void droppedLastCurrentHandsOverToNewLastEpisode() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2, 3, 4), Set.of());
+        queue.setCurrentId(4);
+
+        apply(queue, listing(1, 2), Set.of());
+
+        assertEquals(1, queue.getCurrentIndex());
+        assertEquals(2, currentId(queue));
+    }
+
+    @Test
+    public void unchangedEpisodesKeepTheirQueuedCopy() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2, 3), Set.of());
+        EpisodeSummary queued1 = queue.get(0);
+        EpisodeSummary queued2 = queue.get(1);
+
+        List<Long> prepared = new ArrayList<>();
+        queue.apply(listing(1, 2, 3, 4), episode -> true, Set.of(2L), episode -> {
+            prepared.add(episode.id());
+            return episode;
+        });
+
+        assertEquals(List.of(2L, 4L), prepared);
+        assertSame(queued1, queue.get(0));
+        assertNotSame(queued2, queue.get(1));
+    }
+
+    @Test
+    public void queuedCopyWithSavedPositionSurvivesReload() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2), Set.of());
+        queue.replaceCurrentItem(queue.get(0).createCopyForPosition(500));
+
+        apply(queue, listing(2, 1), Set.of());
+
+        assertEquals(500, queue.get(1).currentPos());
+    }
+
+    @Test
+    public void setCurrentIndexRejectsOutOfRange() {
+        PlaybackQueue queue = new PlaybackQueue();
+        assertThrows(IndexOutOfBoundsException.class, () -> queue.setCurrentIndex(0));
+
+        apply(queue, listing(1, 2, 3), Set.of());
+        queue.setCurrentIndex(2);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> queue.setCurrentIndex(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> queue.setCurrentIndex(3));
+        assertEquals(2, queue.getCurrentIndex());
+    }
+
+    @Test
+    public void setCurrentIdOfUnqueuedEpisodeLeavesCurrentAlone() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2, 3), Set.of());
+        queue.setCurrentId(2);
+
+        assertFalse(queue.setCurrentId(9));
+        assertEquals(2, currentId(queue));
+    }
+
+    @Test
+    public void replaceCurrentItemRejectsOtherEpisode() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2), Set.of());
+
+        assertThrows(IllegalArgumentException.class, () -> queue.replaceCurrentItem(episode(2)));
+        queue.replaceCurrentItem(null);
+        assertEquals(1, currentId(queue));
+    }
+
+    @Test
+    public void iteratorIsReadOnly() {
+        PlaybackQueue queue = new PlaybackQueue();
+        apply(queue, listing(1, 2), Set.of());
+
+        Iterator<EpisodeSummary> iterator = queue.iterator();
+        iterator.next();
+        assertThrows(UnsupportedOperationException.class, iterator::remove);
+    }
+
+    private static void apply(@NonNull PlaybackQueue queue, @NonNull List<EpisodeSummary> listing,
+                              @NonNull Set<Long> changedIds) {
+        queue.apply(listing, episode -> true, changedIds, episode -> episode);
+    }
+
+    private static long currentId(@NonNull PlaybackQueue queue) {
+        EpisodeSummary current = queue.getCurrentItem();
+        return current == null ? -1 : current.id();
+    }
+
+    private static void assertIds(@NonNull PlaybackQueue queue, long... ids) {
+        assertEquals(ids.length, queue.size());
+        for (int i = 0; i < ids.length; ++i) {
+            assertEquals(ids[i], queue.get(i).id());
+            assertEquals(i, queue.indexOfId(ids[i]));
+        }
+    }
+
+    @NonNull
+    private static List<EpisodeSummary> listing(long... ids) {
+        List<EpisodeSummary> listing = new ArrayList<>();
+        for (long id : ids) {
+            listing.add(episode(id));
+        }
+        return listing;
+    }
+
+    @NonNull
+    static EpisodeSummary episode(long id) {
+        return new EpisodeSummary(id, 1, "Podcast", "Episode " + id, id, "/podcasts/" + id + ".mp3",
+                3_600_000, 0, true, false);
+    }
+}